@@ -0,0 +1,100 @@
+package de.kiliansen.lib.ObservableValue.base;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Samples a listener's run time and moves it between same-thread and asynchronous delivery.
+ * <p>
+ * Asynchronous deliveries of an adaptive listener go through a private queue that is drained by one
+ * executor task at a time, so they run in order. Inline delivery only resumes once that queue is
+ * empty, which keeps the listener's order intact across a move in either direction.
+ */
+final class AdaptivePlacement<T, F extends IChangeDef<T>> {
+    private static final int SAMPLES_BEFORE_MOVE = 8;
+
+    private final ThreadedListener<T, F> owner;
+    private final PlacementPolicy policy;
+    private final long promoteBelow;
+    private final long demoteAbove;
+    private final ConcurrentLinkedQueue<Runnable> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+
+    private final AtomicInteger invocations = new AtomicInteger();
+    private long averageNanos;
+    private int samplesSinceMove;
+
+    AdaptivePlacement(ThreadedListener<T, F> owner, PlacementPolicy policy) {
+        this.owner = owner;
+        this.policy = policy;
+        this.promoteBelow = policy.promoteBelow().toNanos();
+        this.demoteAbove = policy.demoteAbove().toNanos();
+    }
+
+    /**
+     * Runs the listener in the calling thread if it is placed there and nothing is queued for it.
+     *
+     * @return true if the change was delivered
+     */
+    boolean tryInline(F changeDef) {
+        if (!owner.useSameThread() || queued.get() != 0) return false;
+        run(changeDef);
+        return true;
+    }
+
+    /**
+     * Returns whether deliveries currently go through the queue. Once true, a delivery appended to
+     * the queue stays in order even if the listener moves to the calling thread meanwhile.
+     */
+    boolean isQueueing() {
+        return !owner.useSameThread() || queued.get() != 0;
+    }
+
+    /**
+     * Appends an asynchronous delivery to this listener's queue and starts a drain if none is running.
+     */
+    void enqueue(Runnable task, java.util.concurrent.Executor executor) {
+        queue.add(task);
+        if (queued.getAndIncrement() == 0) executor.execute(this::drain);
+    }
+
+    private void drain() {
+        do {
+            try {
+                queue.poll().run();
+            } catch (RuntimeException e) {
+                Executor.reportFailure(e);
+            }
+        } while (queued.decrementAndGet() != 0);
+    }
+
+    void run(F changeDef) {
+        if (invocations.incrementAndGet() % policy.sampleEvery() != 0) {
+            owner.listener().accept(changeDef);
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            owner.listener().accept(changeDef);
+        } finally {
+            record(System.nanoTime() - start);
+        }
+    }
+
+    private synchronized void record(long nanos) {
+        averageNanos = averageNanos == 0 ? nanos : averageNanos + (nanos - averageNanos) / 8;
+        if (++samplesSinceMove < SAMPLES_BEFORE_MOVE) return;
+
+        boolean sameThread = owner.useSameThread();
+        if (sameThread && averageNanos > demoteAbove) move(false);
+        else if (!sameThread && averageNanos < promoteBelow) move(true);
+    }
+
+    private void move(boolean useSameThread) {
+        owner.setUseSameThread(useSameThread);
+        samplesSinceMove = 0;
+        if (policy.onDecision() != null) {
+            policy.onDecision().accept(new PlacementPolicy.Decision(owner, useSameThread, averageNanos));
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package de.kiliansen.lib.ObservableValue.base;
+
+import java.time.Duration;
+
+/**
+ * Configures adaptive sizing of the shared {@link Executor}.
+ * <p>
+ * Every {@code sampleInterval} the executor compares the average time listener tasks spent queued
+ * against {@code targetQueueDelay}. The pool grows by a quarter (at least one thread) after two
+ * consecutive samples above the target, and shrinks by one thread after ten consecutive samples well
+ * below the target in which the workers were less than half busy.
+ *
+ * @param minThreads       the lower bound for the number of threads
+ * @param maxThreads       the upper bound for the number of threads
+ * @param sampleInterval   how often the pool is measured and adjusted
+ * @param targetQueueDelay the acceptable average queueing delay of listener tasks
+ */
+public record AdaptivePolicy(int minThreads, int maxThreads, Duration sampleInterval, Duration targetQueueDelay) {
+    public AdaptivePolicy {
+        if (minThreads <= 0 || maxThreads < minThreads) {
+            throw new IllegalArgumentException("Thread bounds must satisfy 0 < minThreads <= maxThreads");
+        }
+        if (sampleInterval == null || sampleInterval.isNegative() || sampleInterval.isZero()) {
+            throw new IllegalArgumentException("Sample interval must be positive");
+        }
+        if (targetQueueDelay == null || targetQueueDelay.isNegative()) {
+            throw new IllegalArgumentException("Target queue delay must not be negative");
+        }
+    }
+
+    /**
+     * Creates a policy sampling every 100 ms with a target queueing delay of 1 ms.
+     *
+     * @param minThreads the lower bound for the number of threads
+     * @param maxThreads the upper bound for the number of threads
+     */
+    public AdaptivePolicy(int minThreads, int maxThreads) {
+        this(minThreads, maxThreads, Duration.ofMillis(100), Duration.ofMillis(1));
+    }
+}
@@ -1,18 +1,202 @@
 package de.kiliansen.lib.ObservableValue.base;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.time.Duration;
+import java.util.Arrays;
 import java.util.List;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Consumer;
+import java.util.function.Predicate;
 
 public abstract class BaseObservable<T, F extends IChangeDef<T>> extends Executor implements ITriggerable<T, F>, IObservable<T, F> {
-    private final List<ThreadedListener<T, F>> listeners = new CopyOnWriteArrayList<>();
+    private static final ThreadedListener<?, ?>[] NO_LISTENERS = new ThreadedListener<?, ?>[0];
+    private static final VarHandle LISTENERS;
+    private static final VarHandle TRACKER;
+
+    static {
+        try {
+            LISTENERS = MethodHandles.lookup().findVarHandle(BaseObservable.class, "listeners", ThreadedListener[].class);
+            TRACKER = MethodHandles.lookup().findVarHandle(BaseObservable.class, "tracker", DeliveryTracker.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /**
+     * Copy-on-write snapshot of the registered listeners. Replaced as a whole on every
+     * (un)subscribe, so dispatch can iterate it without locking or allocating an iterator.
+     */
+    @SuppressWarnings("unchecked")
+    private volatile ThreadedListener<T, F>[] listeners = (ThreadedListener<T, F>[]) NO_LISTENERS;
+
+    /**
+     * Counts asynchronous deliveries for {@link #flushAsync()}. Created with the first async delivery.
+     */
+    private volatile DeliveryTracker tracker;
 
     @Override
     public void trigger(F changeDef) {
-        listeners.parallelStream().forEach(tl -> {
-            if (tl.useSameThread()) tl.listener().accept(changeDef);
-            else getExecutor().submit(() -> tl.listener().accept(changeDef));
-        });
+        if (committing() && capture(changeDef)) return;
+        for (ThreadedListener<T, F> tl : listeners) {
+            deliver(tl, changeDef);
+        }
+    }
+
+    /**
+     * Returns true if the current thread is committing a {@link Transaction}. Checked before a change
+     * definition is allocated just for {@link #capture(IChangeDef)}.
+     *
+     * @return whether change events of the current thread may have to be captured
+     */
+    protected static boolean committing() {
+        return Transaction.isCommitting();
+    }
+
+    /**
+     * Hands a change raised while committing a {@link Transaction} to that transaction, which
+     * delivers it after the commit.
+     *
+     * @param changeDef the change to capture
+     *
+     * @return true if the change was captured and must not be delivered now
+     */
+    protected final boolean capture(F changeDef) {
+        return Transaction.capture(this, changeDef);
+    }
+
+    /**
+     * Merges the changes a {@link Transaction} captured for this observable into the changes that are
+     * delivered after the commit. The default delivers every change unmodified.
+     *
+     * @param changes the captured changes in the order they happened
+     *
+     * @return the changes to deliver
+     */
+    protected List<F> coalesce(List<F> changes) {
+        return changes;
+    }
+
+    /**
+     * Delivers an already materialized change definition to a single listener, either inline or
+     * through the shared executor depending on the listener's threading mode.
+     *
+     * @param tl        the listener to deliver to
+     * @param changeDef the change definition to deliver
+     */
+    protected void deliver(ThreadedListener<T, F> tl, F changeDef) {
+        deliver(tl, changeDef, null);
+    }
+
+    /**
+     * Delivers a change whose delivery was deferred. Asynchronous deliveries are counted together
+     * with the deferred change, so a flush that already waits for it also waits for them.
+     *
+     * @param tl        the listener to deliver to
+     * @param changeDef the change definition to deliver
+     * @param deferred  the deferred delivery of the change, or null
+     */
+    protected void deliver(ThreadedListener<T, F> tl, F changeDef, DeferredDelivery deferred) {
+        AdaptivePlacement<T, F> adaptive = tl.adaptivePlacement();
+        if (adaptive == null) {
+            if (tl.useSameThread()) {
+                tl.listener().accept(changeDef);
+                return;
+            }
+        } else if (adaptive.tryInline(changeDef)) {
+            return;
+        }
+        deliverAsync(tl, adaptive, changeDef, deferred);
+    }
+
+    /**
+     * Hands a change to a listener's asynchronous delivery if it is currently delivered that way,
+     * without ever calling into the listener. The decision is taken once, so a listener that moves
+     * to the calling thread concurrently cannot end up running here. Lets observables notify
+     * asynchronous listeners while holding a lock and the others after releasing it.
+     *
+     * @param tl        the listener to deliver to
+     * @param changeDef the change definition to deliver
+     *
+     * @return false if the listener may run in the calling thread and has to be passed to
+     * {@link #deliver(ThreadedListener, IChangeDef)} instead
+     */
+    protected final boolean tryHandOver(ThreadedListener<T, F> tl, F changeDef) {
+        AdaptivePlacement<T, F> adaptive = tl.adaptivePlacement();
+        if (adaptive == null ? tl.useSameThread() : !adaptive.isQueueing()) return false;
+        deliverAsync(tl, adaptive, changeDef, null);
+        return true;
+    }
+
+    private void deliverAsync(ThreadedListener<T, F> tl, AdaptivePlacement<T, F> adaptive, F changeDef, DeferredDelivery deferred) {
+        DeliveryTracker.Epoch epoch = deferred == null ? tracker().enter() : deferred.epoch.join();
+        Runnable task = () -> {
+            try {
+                if (adaptive != null) adaptive.run(changeDef);
+                else tl.listener().accept(changeDef);
+            } catch (RuntimeException e) {
+                reportFailure(e);
+            } finally {
+                epoch.exit();
+            }
+        };
+        try {
+            java.util.concurrent.Executor executor = asyncExecutor(changeDef);
+            if (adaptive != null) adaptive.enqueue(task, executor);
+            else executor.execute(task);
+        } catch (RuntimeException e) {
+            epoch.exit();
+            throw e;
+        }
+    }
+
+    /**
+     * Selects where asynchronous deliveries of a change run. Defaults to the shared executor;
+     * subclasses may route changes to dedicated executors, e.g. to keep related changes ordered.
+     *
+     * @param changeDef the change being delivered
+     *
+     * @return the executor to run the delivery on
+     */
+    protected java.util.concurrent.Executor asyncExecutor(F changeDef) {
+        return getExecutor();
+    }
+
+    /**
+     * Counts a change whose delivery is handed to another thread, so that flushes issued until it
+     * has been delivered wait for it. The returned handle must be passed to
+     * {@link #deliver(ThreadedListener, IChangeDef, DeferredDelivery)} for each of the change's
+     * listeners and then marked {@link DeferredDelivery#delivered() delivered}.
+     *
+     * @return the handle of the deferred delivery
+     */
+    protected final DeferredDelivery deferDelivery() {
+        return new DeferredDelivery(tracker().enter());
+    }
+
+    DeliveryTracker tracker() {
+        DeliveryTracker current = tracker;
+        if (current == null) {
+            DeliveryTracker created = new DeliveryTracker();
+            current = (DeliveryTracker) TRACKER.compareAndExchange(this, null, created);
+            if (current == null) current = created;
+        }
+        return current;
+    }
+
+    @Override
+    public CompletableFuture<Void> flushAsync() {
+        DeliveryTracker current = tracker;
+        return current == null ? CompletableFuture.completedFuture(null) : current.flush();
+    }
+
+    /**
+     * Returns the current listener snapshot. The returned array must not be modified.
+     *
+     * @return the registered listeners
+     */
+    protected final ThreadedListener<T, F>[] listeners() {
+        return listeners;
     }
 
     /**
@@ -20,8 +204,9 @@ public abstract class BaseObservable<T, F extends IChangeDef<T>> extends Executo
      * This method clears the list of listeners and logs the action.
      */
     @Override
+    @SuppressWarnings("unchecked")
     public void removeAllListeners() {
-        listeners.clear();
+        listeners = (ThreadedListener<T, F>[]) NO_LISTENERS;
     }
 
 
@@ -32,7 +217,12 @@ public abstract class BaseObservable<T, F extends IChangeDef<T>> extends Executo
      */
     @Override
     public void removeListener(Consumer<F> listener) {
-        listeners.removeIf(tl -> tl.listener().equals(listener));
+        removeListenersIf(tl -> tl.listener().equals(listener));
+    }
+
+    @Override
+    public void removeBatchListener(Consumer<List<F>> listener) {
+        removeListenersIf(tl -> tl.listener() instanceof BatchDelivery<?, ?> batch && batch.listener().equals(listener));
     }
 
     /**
@@ -45,8 +235,75 @@ public abstract class BaseObservable<T, F extends IChangeDef<T>> extends Executo
      */
     @Override
     public ThreadedListener<T, F> onChangeDef(Consumer<F> listener, boolean useSameThread) {
-        ThreadedListener<T, F> tl = new ThreadedListener<>(listener, useSameThread, this);
-        listeners.add(tl);
+        return onChangeDef(listener, null, useSameThread);
+    }
+
+    /**
+     * Registers a listener together with a direct form of it that receives the change fields
+     * without a change definition being allocated. Subclasses use the direct form on their
+     * same-thread dispatch path and fall back to {@code listener} everywhere else.
+     *
+     * @param listener       the change definition based listener
+     * @param directListener the field based form of the same listener, or null
+     * @param useSameThread  if true, the listener will be called in the same thread that calls set()
+     *
+     * @return an AutoCloseable that can be used to unregister the listener
+     */
+    protected ThreadedListener<T, F> onChangeDef(Consumer<F> listener, Object directListener, boolean useSameThread) {
+        ThreadedListener<T, F> tl = new ThreadedListener<>(listener, directListener, useSameThread, this);
+        addListener(tl);
         return tl;
     }
+
+    /**
+     * Registers a listener that receives changes in batches. See {@link BatchDelivery}.
+     */
+    @Override
+    public ThreadedListener<T, F> onChangeDefBatch(Consumer<List<F>> listener, int maxBatch, Duration maxDelay) {
+        if (listener == null) {
+            throw new IllegalArgumentException("Listener cannot be null");
+        }
+        if (maxBatch <= 0 || maxDelay == null || maxDelay.isNegative()) {
+            throw new IllegalArgumentException("Batch size must be greater than 0 and delay must not be negative");
+        }
+        return onChangeDef(new BatchDelivery<>(this, listener, maxBatch, maxDelay.toNanos()), true);
+    }
+
+    /**
+     * A change delivery handed to another thread, see {@link #deferDelivery()}.
+     */
+    protected static final class DeferredDelivery {
+        private final DeliveryTracker.Epoch epoch;
+
+        private DeferredDelivery(DeliveryTracker.Epoch epoch) {
+            this.epoch = epoch;
+        }
+
+        /**
+         * Marks the change as delivered to all listeners. Must be called exactly once.
+         */
+        public void delivered() {
+            epoch.exit();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void addListener(ThreadedListener<T, F> tl) {
+        ThreadedListener<T, F>[] current, updated;
+        do {
+            current = listeners;
+            updated = Arrays.copyOf(current, current.length + 1);
+            updated[current.length] = tl;
+        } while (!LISTENERS.compareAndSet(this, current, updated));
+    }
+
+    @SuppressWarnings("unchecked")
+    private void removeListenersIf(Predicate<ThreadedListener<T, F>> filter) {
+        ThreadedListener<T, F>[] current, updated;
+        do {
+            current = listeners;
+            updated = Arrays.stream(current).filter(filter.negate()).toArray(ThreadedListener[]::new);
+            if (updated.length == current.length) return;
+        } while (!LISTENERS.compareAndSet(this, current, updated));
+    }
 }
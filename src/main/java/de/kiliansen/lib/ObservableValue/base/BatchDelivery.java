@@ -0,0 +1,175 @@
+package de.kiliansen.lib.ObservableValue.base;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Collects the changes for one batch listener and hands them over in lists.
+ * <p>
+ * Changes are appended to a pending buffer in the triggering thread. A drain task on the shared
+ * executor swaps the pending buffer with a second one and delivers it in slices of at most
+ * {@code maxBatch} changes, so both buffers are reused and only one task per batch is submitted.
+ * At most one drain runs at a time, which keeps the changes in order. With a {@code maxDelay}, the
+ * first change after an idle period arms a timer instead, and the batch is delivered once the
+ * timer fires or {@code maxBatch} changes have accumulated, whichever comes first.
+ * <p>
+ * An exception thrown by the listener is reported like those of other asynchronous listeners and
+ * does not stop the batches behind it. If the shared executor rejects a drain, e.g. after
+ * {@link Executor#shutdownNow()}, the changes waiting for it are dropped, the batch listener
+ * returns to idle and the rejection is rethrown to the mutator, as for other asynchronous listeners.
+ */
+final class BatchDelivery<T, F extends IChangeDef<T>> implements Consumer<F> {
+    private static final int IDLE = 0;
+    private static final int ARMED = 1;
+    private static final int RUNNING = 2;
+
+    private final BaseObservable<T, F> owner;
+    private final Consumer<List<F>> listener;
+    private final int maxBatch;
+    private final long maxDelayNanos;
+
+    private ArrayList<F> pending = new ArrayList<>();
+    private ArrayList<F> draining = new ArrayList<>();
+    private ArrayList<DeliveryTracker.Epoch> pendingEpochs = new ArrayList<>(1);
+    private ArrayList<DeliveryTracker.Epoch> drainingEpochs = new ArrayList<>(1);
+    private int state = IDLE;
+    private int timerGeneration;
+
+    BatchDelivery(BaseObservable<T, F> owner, Consumer<List<F>> listener, int maxBatch, long maxDelayNanos) {
+        this.owner = owner;
+        this.listener = listener;
+        this.maxBatch = maxBatch;
+        this.maxDelayNanos = maxDelayNanos;
+    }
+
+    Consumer<List<F>> listener() {
+        return listener;
+    }
+
+    @Override
+    public void accept(F changeDef) {
+        boolean submit = false;
+        int arm = -1;
+        synchronized (this) {
+            pending.add(changeDef);
+            DeliveryTracker.Epoch held = pendingEpochs.isEmpty() ? null : pendingEpochs.get(pendingEpochs.size() - 1);
+            DeliveryTracker.Epoch epoch = owner.tracker().enter(held);
+            if (epoch != held) pendingEpochs.add(epoch);
+
+            if (state != RUNNING && (maxDelayNanos == 0 || pending.size() >= maxBatch)) {
+                state = RUNNING;
+                submit = true;
+            } else if (state == IDLE) {
+                state = ARMED;
+                arm = ++timerGeneration;
+            }
+        }
+        if (submit) {
+            submitDrain();
+        } else if (arm >= 0) {
+            int generation = arm;
+            Timer.SCHEDULER.schedule(() -> timeout(generation), maxDelayNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void timeout(int generation) {
+        synchronized (this) {
+            if (state != ARMED || timerGeneration != generation) return;
+            state = RUNNING;
+        }
+        try {
+            submitDrain();
+        } catch (RejectedExecutionException e) {
+            // No mutator to rethrow to on the timer thread
+            Executor.reportFailure(e);
+        }
+    }
+
+    /**
+     * Submits a drain after the state has been set to running. On rejection the waiting changes are
+     * dropped and their deliveries counted as done, so the listener can resume with later changes
+     * and flushes do not wait for deliveries that will never happen.
+     */
+    private void submitDrain() {
+        try {
+            Executor.getExecutor().execute(this::drain);
+        } catch (RejectedExecutionException e) {
+            ArrayList<DeliveryTracker.Epoch> epochs;
+            synchronized (this) {
+                pending.clear();
+                epochs = pendingEpochs;
+                pendingEpochs = new ArrayList<>(1);
+                state = IDLE;
+            }
+            for (DeliveryTracker.Epoch epoch : epochs) {
+                epoch.exit();
+            }
+            throw e;
+        }
+    }
+
+    private void drain() {
+        boolean first = true;
+        while (true) {
+            int arm = -1;
+            synchronized (this) {
+                if (pending.isEmpty()) {
+                    state = IDLE;
+                    return;
+                }
+                if (!first && maxDelayNanos != 0 && pending.size() < maxBatch) {
+                    // Changes that arrived during the last batch get their own delay
+                    state = ARMED;
+                    arm = ++timerGeneration;
+                } else {
+                    ArrayList<F> changes = pending;
+                    pending = draining;
+                    draining = changes;
+                    ArrayList<DeliveryTracker.Epoch> epochs = pendingEpochs;
+                    pendingEpochs = drainingEpochs;
+                    drainingEpochs = epochs;
+                }
+            }
+            if (arm >= 0) {
+                int generation = arm;
+                Timer.SCHEDULER.schedule(() -> timeout(generation), maxDelayNanos, TimeUnit.NANOSECONDS);
+                return;
+            }
+            first = false;
+
+            try {
+                for (int from = 0; from < draining.size(); from += maxBatch) {
+                    List<F> batch = draining.subList(from, Math.min(from + maxBatch, draining.size()));
+                    try {
+                        listener.accept(Collections.unmodifiableList(batch));
+                    } catch (RuntimeException e) {
+                        Executor.reportFailure(e);
+                    }
+                }
+            } finally {
+                draining.clear();
+                for (DeliveryTracker.Epoch epoch : drainingEpochs) {
+                    epoch.exit();
+                }
+                drainingEpochs.clear();
+            }
+        }
+    }
+
+    /**
+     * Holds the timer thread for delayed batches, created with the first delayed batch listener.
+     */
+    private static final class Timer {
+        static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, Executor.class.getSimpleName() + "-Batch-Timer");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+}
@@ -0,0 +1,83 @@
+package de.kiliansen.lib.ObservableValue.base;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the asynchronous deliveries of one observable so that callers can wait for them.
+ * <p>
+ * Deliveries are counted in epochs. Every delivery increments the counter of the current epoch when
+ * it is submitted and decrements it when it completes. An epoch is only entered while it is still
+ * current, so a sealed epoch that has drained is never entered again. A flush seals the current epoch, opens a new
+ * one and returns a future that completes once the sealed epoch and all epochs sealed before it have
+ * drained. No per-delivery object is created for this.
+ */
+final class DeliveryTracker {
+    private volatile Epoch current = new Epoch();
+    private CompletableFuture<Void> lastFlush = CompletableFuture.completedFuture(null);
+
+    Epoch enter() {
+        return enter(null);
+    }
+
+    /**
+     * Enters the current epoch unless {@code held} already is the current epoch. Lets a caller
+     * covering many deliveries with one count enter each epoch only once.
+     *
+     * @param held the epoch the caller has entered and not exited yet, or null
+     *
+     * @return the epoch covering the new delivery
+     */
+    Epoch enter(Epoch held) {
+        while (true) {
+            Epoch epoch = current;
+            if (epoch == held) return held;
+            epoch.pending.incrementAndGet();
+            if (current == epoch) return epoch;
+            // A flush sealed the epoch between the read and the increment and may already have seen
+            // it drained, so the delivery has to be counted in the new epoch instead
+            epoch.exit();
+        }
+    }
+
+    synchronized CompletableFuture<Void> flush() {
+        Epoch sealed = current;
+        current = new Epoch();
+        sealed.seal();
+        CompletableFuture<Void> flushed = lastFlush.isDone() ? sealed.drained : CompletableFuture.allOf(lastFlush, sealed.drained);
+        lastFlush = flushed;
+        return flushed;
+    }
+
+    static final class Epoch {
+        /**
+         * The deliveries in this epoch plus one while it is open, so that sealing and the last exit
+         * agree on a single transition to zero.
+         */
+        private final AtomicLong pending = new AtomicLong(1);
+        private final CompletableFuture<Void> drained = new CompletableFuture<>();
+
+        /**
+         * Counts another delivery in this epoch. Only valid while the caller has entered the epoch
+         * and not exited it yet, which keeps the epoch from draining in between.
+         *
+         * @return this epoch
+         */
+        Epoch join() {
+            pending.incrementAndGet();
+            return this;
+        }
+
+        void exit() {
+            if (pending.decrementAndGet() == 0) drained.complete(null);
+        }
+
+        boolean isDrained() {
+            return drained.isDone();
+        }
+
+        private void seal() {
+            exit();
+        }
+    }
+}
@@ -3,6 +3,8 @@ package de.kiliansen.lib.ObservableValue.base;
 import java.time.Duration;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
@@ -22,13 +24,28 @@ public class Executor {
         t.setName(namingStrategy.apply(new ThreadInfo(t.getName(), t.threadId())));
         return t;
     };
-    private static volatile ExecutorService executor = newExecutor(Runtime.getRuntime().availableProcessors());
-    private static volatile int numThreads = 0;
+    private static volatile int numThreads = Runtime.getRuntime().availableProcessors();
+    private static volatile ListenerPool executor = newExecutor(numThreads);
+    private static ScheduledExecutorService adaptiveScheduler;
+    private static ScheduledFuture<?> adaptiveTask;
 
     protected static ExecutorService getExecutor() {
         return executor;
     }
 
+    /**
+     * Reports an exception thrown by a listener running on a pool thread, without stopping the
+     * deliveries behind it. The exception goes to the current thread's uncaught exception handler,
+     * which prints it unless the application installed its own, e.g. through
+     * {@link Thread#setDefaultUncaughtExceptionHandler}.
+     *
+     * @param failure the exception thrown by the listener
+     */
+    static void reportFailure(Throwable failure) {
+        Thread current = Thread.currentThread();
+        current.getUncaughtExceptionHandler().uncaughtException(current, failure);
+    }
+
     /**
      * Sets a custom naming strategy for the threads in the executor service.
      * The naming strategy should be a function that takes a ThreadInfo object and returns a String.
@@ -60,17 +77,19 @@ public class Executor {
      *
      * @return a new ExecutorService instance
      */
-    private static ExecutorService newExecutor(int numThreads) {
-        return Executors.newFixedThreadPool(Math.max(1, numThreads), threadFactory);
+    private static ListenerPool newExecutor(int numThreads) {
+        return new ListenerPool(Math.max(1, numThreads), threadFactory);
     }
 
     /**
      * Resizes the executor service to a new number of threads.
      * If the number of threads is the same as the current one, no action is taken.
-     * If the timeout is reached while waiting for tasks to finish, the old executor is shut down immediately.
+     * The pool is resized in place: existing workers are kept, surplus workers exit once they are idle
+     * and queued tasks are neither dropped nor cancelled. The timeout is only used if the executor
+     * service was shut down and has to be replaced.
      *
      * @param numThreads the new number of threads for the executor service
-     * @param timeout    the maximum time to wait for tasks to finish before shutting down
+     * @param timeout    the maximum time to wait for a shut down executor to finish before replacing it
      *
      * @throws InterruptedException if the current thread is interrupted while waiting
      */
@@ -83,25 +102,67 @@ public class Executor {
         }
 
         synchronized (lock) {
+            if (executor.isShutdown()) {
+                ExecutorService oldExecutor = executor;
+                executor = newExecutor(numThreads);
+                executor.setTiming(adaptiveTask != null);
+                Executor.numThreads = numThreads;
+                if (!oldExecutor.awaitTermination(timeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                    System.err.println("Executor did not terminate cleanly");
+                }
+                return;
+            }
             if (numThreads == Executor.numThreads) {
                 return; // No change needed
             }
+            executor.resize(numThreads);
+            Executor.numThreads = numThreads;
+        }
+    }
 
-            ExecutorService oldExecutor = executor;
+    /**
+     * Lets the executor service grow and shrink on its own between the bounds of the given policy,
+     * based on how long listener tasks wait in the queue and how busy the workers are. Resizing happens
+     * in place, see {@link #resize(int, Duration)}. Calling this again replaces the previous policy.
+     *
+     * @param policy the adaptive sizing policy
+     */
+    public static void enableAdaptiveSizing(AdaptivePolicy policy) {
+        if (policy == null) {
+            throw new IllegalArgumentException("Policy cannot be null");
+        }
 
-            // Update the static fields atomically
-            executor = newExecutor(numThreads);
-            Executor.numThreads = numThreads;
+        synchronized (lock) {
+            disableAdaptiveSizing();
+            if (adaptiveScheduler == null) {
+                adaptiveScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                    Thread t = new Thread(r, Executor.class.getSimpleName() + "-Adaptive");
+                    t.setDaemon(true);
+                    return t;
+                });
+            }
+            int clamped = Math.clamp(numThreads, policy.minThreads(), policy.maxThreads());
+            if (clamped != numThreads) {
+                executor.resize(clamped);
+                numThreads = clamped;
+            }
+            executor.sample();
+            executor.setTiming(true);
+            long interval = policy.sampleInterval().toNanos();
+            adaptiveTask = adaptiveScheduler.scheduleAtFixedRate(new AdaptiveController(policy), interval, interval, TimeUnit.NANOSECONDS);
+        }
+    }
 
-            // Shutdown old executor gracefully
-            oldExecutor.shutdown();
-            if (!oldExecutor.awaitTermination(timeout.toMillis(), TimeUnit.MILLISECONDS)) {
-                oldExecutor.shutdownNow();
-                // Wait a bit more for tasks to respond to being cancelled
-                if (!oldExecutor.awaitTermination(1, TimeUnit.SECONDS)) {
-                    System.err.println("Executor did not terminate cleanly");
-                }
+    /**
+     * Stops adaptive sizing. The executor service keeps its current number of threads.
+     */
+    public static void disableAdaptiveSizing() {
+        synchronized (lock) {
+            if (adaptiveTask != null) {
+                adaptiveTask.cancel(false);
+                adaptiveTask = null;
             }
+            executor.setTiming(false);
         }
     }
 
@@ -119,6 +180,7 @@ public class Executor {
                 return;
             }
 
+            disableAdaptiveSizing();
             executor.shutdown();
             if (!executor.awaitTermination(timeout.toMillis(), TimeUnit.MILLISECONDS)) {
                 executor.shutdownNow();
@@ -134,6 +196,7 @@ public class Executor {
      */
     public static void shutdownNow() {
         synchronized (lock) {
+            disableAdaptiveSizing();
             executor.shutdownNow();
         }
     }
@@ -147,4 +210,64 @@ public class Executor {
             this(thread.getName(), thread.threadId());
         }
     }
+
+    /**
+     * Periodically samples the executor service and adjusts its size. Growing reacts after two
+     * congested samples, shrinking only after ten idle ones, so the size does not oscillate.
+     */
+    static final class AdaptiveController implements Runnable {
+        private static final int GROW_AFTER = 2;
+        private static final int SHRINK_AFTER = 10;
+
+        private final AdaptivePolicy policy;
+        private int congestedSamples;
+        private int idleSamples;
+
+        AdaptiveController(AdaptivePolicy policy) {
+            this.policy = policy;
+        }
+
+        @Override
+        public void run() {
+            synchronized (lock) {
+                ListenerPool pool = executor;
+                if (pool.isShutdown()) return;
+                int size = numThreads;
+                int newSize = nextSize(size, pool.sample());
+                if (newSize != size) {
+                    pool.resize(newSize);
+                    numThreads = newSize;
+                }
+            }
+        }
+
+        /**
+         * Folds one sample into the controller's state and returns the pool size it asks for.
+         *
+         * @param size   the current number of threads
+         * @param sample the timings of the last sampling period
+         *
+         * @return the new number of threads, or {@code size} to keep it
+         */
+        int nextSize(int size, ListenerPool.Sample sample) {
+            long target = policy.targetQueueDelay().toNanos();
+            double utilization = sample.runNanos() / (double) (policy.sampleInterval().toNanos() * size);
+
+            boolean congested = sample.averageQueueDelayNanos() > target
+                    || (sample.completed() == 0 && sample.queued() > 0);
+            boolean idle = sample.queued() == 0 && sample.averageQueueDelayNanos() <= target / 4 && utilization < 0.5;
+            congestedSamples = congested ? congestedSamples + 1 : 0;
+            idleSamples = idle ? idleSamples + 1 : 0;
+
+            if (congestedSamples >= GROW_AFTER) {
+                congestedSamples = 0;
+                return Math.min(policy.maxThreads(), size + Math.max(1, size / 4));
+            }
+            if (idleSamples >= SHRINK_AFTER) {
+                idleSamples = 0;
+                return Math.max(policy.minThreads(), size - 1);
+            }
+            return size;
+        }
+    }
 }
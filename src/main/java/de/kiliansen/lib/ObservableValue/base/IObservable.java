@@ -1,5 +1,11 @@
 package de.kiliansen.lib.ObservableValue.base;
 
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.function.Consumer;
 
 public interface IObservable<T, F extends IChangeDef<T>> {
@@ -19,4 +25,85 @@ public interface IObservable<T, F extends IChangeDef<T>> {
     }
 
     ThreadedListener<T, F> onChangeDef(Consumer<F> listener, boolean useSameThread);
+
+    /**
+     * Registers a listener that receives changes in lists instead of one by one. Changes are queued
+     * per listener and drained by a single executor task, so the listener sees them in order and
+     * never runs concurrently with itself. The lists passed to the listener are only valid for the
+     * duration of the call.
+     *
+     * @param listener the listener to register
+     * @param maxBatch the maximum number of changes per list
+     * @param maxDelay how long to wait for more changes before delivering an incomplete list, zero
+     *                 delivers as soon as an executor thread is available
+     *
+     * @return a ThreadedListener that can be used to unregister the listener
+     */
+    ThreadedListener<T, F> onChangeDefBatch(Consumer<List<F>> listener, int maxBatch, Duration maxDelay);
+
+    /**
+     * Removes a listener registered through {@link #onChangeDefBatch(Consumer, int, Duration)}.
+     * Changes already queued for it are still delivered.
+     *
+     * @param listener the listener to remove
+     */
+    void removeBatchListener(Consumer<List<F>> listener);
+
+    /**
+     * Returns a future that completes once every asynchronous listener delivery issued by this
+     * observable before the call has finished. Same-thread listeners have finished by the time a
+     * mutation returns, unless the observable hands the change to another thread that is already
+     * delivering (see {@code ObservableList}); such changes are waited for as well.
+     *
+     * @return a future completing when all earlier deliveries are done
+     */
+    CompletableFuture<Void> flushAsync();
+
+    /**
+     * Waits until every asynchronous listener delivery issued by this observable before the call
+     * has finished.
+     *
+     * @throws InterruptedException if the current thread is interrupted while waiting
+     */
+    default void flush() throws InterruptedException {
+        try {
+            flushAsync().get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Waits at most the given time until every asynchronous listener delivery issued by this
+     * observable before the call has finished.
+     *
+     * @param timeout the maximum time to wait
+     *
+     * @return true if all deliveries finished, false if the timeout elapsed first
+     *
+     * @throws InterruptedException if the current thread is interrupted while waiting
+     */
+    default boolean flush(Duration timeout) throws InterruptedException {
+        try {
+            flushAsync().get(timeout.toNanos(), TimeUnit.NANOSECONDS);
+            return true;
+        } catch (TimeoutException e) {
+            return false;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Runs a mutation and returns a handle that completes once the listeners notified by it have
+     * finished. The handle also covers deliveries issued before the mutation.
+     *
+     * @param mutation the mutation to run, e.g. {@code () -> map.put(key, value)}
+     *
+     * @return a future completing when the mutation's deliveries are done
+     */
+    default CompletableFuture<Void> track(Runnable mutation) {
+        mutation.run();
+        return flushAsync();
+    }
 }
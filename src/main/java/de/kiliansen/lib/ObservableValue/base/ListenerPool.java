@@ -0,0 +1,80 @@
+package de.kiliansen.lib.ObservableValue.base;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The thread pool behind {@link Executor}. It can be resized in place without replacing workers or
+ * touching queued tasks, and optionally measures how long tasks wait in the queue and how long they run.
+ */
+final class ListenerPool extends ThreadPoolExecutor {
+    private final LongAdder queueDelayNanos = new LongAdder();
+    private final LongAdder runNanos = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private volatile boolean timing;
+
+    ListenerPool(int numThreads, ThreadFactory threadFactory) {
+        super(numThreads, numThreads, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), threadFactory);
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        super.execute(timing ? new TimedTask(command, System.nanoTime()) : command);
+    }
+
+    void setTiming(boolean timing) {
+        this.timing = timing;
+    }
+
+    /**
+     * Changes the number of workers. Surplus workers exit once they are idle, new workers are
+     * started on demand; queued tasks are kept either way.
+     */
+    void resize(int numThreads) {
+        if (numThreads > getMaximumPoolSize()) {
+            setMaximumPoolSize(numThreads);
+            setCorePoolSize(numThreads);
+        } else {
+            setCorePoolSize(numThreads);
+            setMaximumPoolSize(numThreads);
+        }
+    }
+
+    /**
+     * Returns the timings collected since the previous call and starts a new sampling period.
+     */
+    Sample sample() {
+        return new Sample(completed.sumThenReset(), queueDelayNanos.sumThenReset(), runNanos.sumThenReset(), getQueue().size());
+    }
+
+    record Sample(long completed, long queueDelayNanos, long runNanos, int queued) {
+        long averageQueueDelayNanos() {
+            return completed == 0 ? 0 : queueDelayNanos / completed;
+        }
+    }
+
+    private final class TimedTask implements Runnable {
+        private final Runnable task;
+        private final long enqueued;
+
+        TimedTask(Runnable task, long enqueued) {
+            this.task = task;
+            this.enqueued = enqueued;
+        }
+
+        @Override
+        public void run() {
+            long start = System.nanoTime();
+            queueDelayNanos.add(start - enqueued);
+            try {
+                task.run();
+            } finally {
+                runNanos.add(System.nanoTime() - start);
+                completed.increment();
+            }
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package de.kiliansen.lib.ObservableValue.base;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs tasks on a fixed number of single-threaded lanes. Tasks submitted for the same hash always
+ * run on the same lane and therefore in submission order, while different lanes run in parallel.
+ * <p>
+ * A barrier task runs after every task submitted to any lane before it, and before every task
+ * submitted after it.
+ */
+public final class PartitionedDispatcher implements AutoCloseable {
+    private final ThreadPoolExecutor[] lanes;
+    private final Object barrierLock = new Object();
+
+    /**
+     * Creates a dispatcher and starts its lane threads.
+     *
+     * @param laneCount  the number of lanes
+     * @param namePrefix the prefix for the lane thread names
+     */
+    public PartitionedDispatcher(int laneCount, String namePrefix) {
+        if (laneCount <= 0) {
+            throw new IllegalArgumentException("Number of lanes must be greater than 0");
+        }
+        this.lanes = new ThreadPoolExecutor[laneCount];
+        for (int i = 0; i < laneCount; i++) {
+            String name = namePrefix + "-Lane-" + i;
+            lanes[i] = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), r -> {
+                Thread t = new Thread(r, name);
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+
+    /**
+     * Returns the lane for the given hash.
+     *
+     * @param hash the partitioning hash, usually a key's hash code
+     *
+     * @return the lane executor
+     */
+    public ExecutorService lane(int hash) {
+        return lanes[laneIndex(hash)];
+    }
+
+    /**
+     * Returns the index of the lane for the given hash, between 0 and {@link #getLaneCount()}.
+     *
+     * @param hash the partitioning hash, usually a key's hash code
+     *
+     * @return the lane index
+     */
+    public int laneIndex(int hash) {
+        return Math.floorMod(hash ^ (hash >>> 16), lanes.length);
+    }
+
+    /**
+     * Runs a task once all lanes have finished everything submitted before it. All lanes are
+     * held until the task completes.
+     *
+     * @param task the task to run
+     */
+    public void barrier(Runnable task) {
+        AtomicInteger arrivals = new AtomicInteger(lanes.length);
+        CountDownLatch released = new CountDownLatch(1);
+        Runnable arrive = () -> {
+            if (arrivals.decrementAndGet() == 0) {
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    // Like ExecutorService.submit, a failing task must not take down its lane
+                } finally {
+                    released.countDown();
+                }
+                return;
+            }
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    released.await();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) Thread.currentThread().interrupt();
+        };
+        // Barriers have to reach all lanes in the same order, otherwise two of them could wait on each other
+        synchronized (barrierLock) {
+            for (ThreadPoolExecutor lane : lanes) {
+                lane.execute(arrive);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of lanes.
+     *
+     * @return the lane count
+     */
+    public int getLaneCount() {
+        return lanes.length;
+    }
+
+    /**
+     * Returns the number of tasks waiting in each lane, excluding the ones currently running.
+     *
+     * @return the queue depth per lane
+     */
+    public int[] getQueueDepths() {
+        int[] depths = new int[lanes.length];
+        for (int i = 0; i < lanes.length; i++) {
+            depths[i] = lanes[i].getQueue().size();
+        }
+        return depths;
+    }
+
+    /**
+     * Stops accepting tasks. Tasks already queued still run.
+     */
+    @Override
+    public void close() {
+        for (ThreadPoolExecutor lane : lanes) {
+            lane.shutdown();
+        }
+    }
+}
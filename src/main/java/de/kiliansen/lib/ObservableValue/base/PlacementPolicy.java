@@ -0,0 +1,49 @@
+package de.kiliansen.lib.ObservableValue.base;
+
+import java.time.Duration;
+import java.util.function.Consumer;
+
+/**
+ * Configures adaptive placement of a {@link ThreadedListener}, see
+ * {@link ThreadedListener#enableAdaptivePlacement(PlacementPolicy)}.
+ * <p>
+ * Every {@code sampleEvery}-th invocation of the listener is timed and folded into a moving average.
+ * A same-thread listener whose average exceeds {@code demoteAbove} is moved to asynchronous
+ * delivery, an asynchronous listener whose average drops below {@code promoteBelow} is moved back
+ * inline. After a move, the average has to be confirmed by a few fresh samples before the next one.
+ *
+ * @param promoteBelow the average run time below which the listener runs in the calling thread
+ * @param demoteAbove  the average run time above which the listener runs asynchronously
+ * @param sampleEvery  how many invocations share one timing sample
+ * @param onDecision   called after every move, may be null
+ */
+public record PlacementPolicy(Duration promoteBelow, Duration demoteAbove, int sampleEvery, Consumer<Decision> onDecision) {
+    public PlacementPolicy {
+        if (promoteBelow == null || demoteAbove == null || promoteBelow.compareTo(demoteAbove) >= 0) {
+            throw new IllegalArgumentException("promoteBelow must be shorter than demoteAbove");
+        }
+        if (sampleEvery <= 0) {
+            throw new IllegalArgumentException("sampleEvery must be greater than 0");
+        }
+    }
+
+    /**
+     * Creates a policy that promotes listeners averaging under 2 µs, demotes listeners averaging
+     * over 50 µs and times every 16th invocation.
+     *
+     * @param onDecision called after every move, may be null
+     */
+    public PlacementPolicy(Consumer<Decision> onDecision) {
+        this(Duration.ofNanos(2_000), Duration.ofNanos(50_000), 16, onDecision);
+    }
+
+    /**
+     * Describes a placement change.
+     *
+     * @param listener      the listener that was moved
+     * @param useSameThread true if the listener now runs in the calling thread
+     * @param averageNanos  the average run time that caused the move
+     */
+    public record Decision(ThreadedListener<?, ?> listener, boolean useSameThread, long averageNanos) {
+    }
+}
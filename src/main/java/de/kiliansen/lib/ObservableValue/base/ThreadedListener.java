@@ -1,7 +1,6 @@
 package de.kiliansen.lib.ObservableValue.base;
 
 import java.util.Objects;
-import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Consumer;
 
 /**
@@ -10,11 +9,29 @@ import java.util.function.Consumer;
  */
 public final class ThreadedListener<T, F extends IChangeDef<T>> {
     private final Consumer<F> listener;
-    private final AtomicBoolean useSameThread;
+    private final Object directListener;
+    private volatile boolean useSameThread;
 
     private final IObservable<T, F> value;
+    private volatile AdaptivePlacement<T, F> adaptivePlacement;
 
     public ThreadedListener(Consumer<F> listener, boolean useSameThread, IObservable<T, F> value) throws IllegalArgumentException {
+        this(listener, null, useSameThread, value);
+    }
+
+    /**
+     * Creates a listener that additionally carries a direct form receiving the change fields as
+     * arguments. Observables use the direct form for same-thread delivery so that no change
+     * definition has to be allocated.
+     *
+     * @param listener       the change definition based listener
+     * @param directListener the field based form of the same listener, or null if there is none
+     * @param useSameThread  if true, the listener will be called in the same thread that triggers the change
+     * @param value          the observable this listener is registered on
+     *
+     * @throws IllegalArgumentException if listener or value is null
+     */
+    public ThreadedListener(Consumer<F> listener, Object directListener, boolean useSameThread, IObservable<T, F> value) throws IllegalArgumentException {
         if (listener == null) {
             throw new IllegalArgumentException("Listener cannot be null");
         }
@@ -23,7 +40,8 @@ public final class ThreadedListener<T, F extends IChangeDef<T>> {
         }
 
         this.listener = listener;
-        this.useSameThread = new AtomicBoolean(useSameThread);
+        this.directListener = directListener;
+        this.useSameThread = useSameThread;
         this.value = value;
     }
 
@@ -31,30 +49,77 @@ public final class ThreadedListener<T, F extends IChangeDef<T>> {
         return listener;
     }
 
+    /**
+     * Returns the field based form of this listener, if one was registered.
+     *
+     * @return the direct listener, or null
+     */
+    public Object directListener() {
+        return directListener;
+    }
+
     public boolean useSameThread() {
-        return useSameThread.get();
+        return useSameThread;
     }
 
     public void setUseSameThread(boolean useSameThread) {
-        this.useSameThread.set(useSameThread);
+        this.useSameThread = useSameThread;
+    }
+
+    /**
+     * Lets this listener move between same-thread and asynchronous delivery on its own, based on
+     * sampled run times. Its deliveries stay in order across moves. Replaces any previous policy.
+     *
+     * @param policy the placement policy
+     */
+    public void enableAdaptivePlacement(PlacementPolicy policy) {
+        if (policy == null) {
+            throw new IllegalArgumentException("Policy cannot be null");
+        }
+        this.adaptivePlacement = new AdaptivePlacement<>(this, policy);
+    }
+
+    /**
+     * Stops adaptive placement and keeps the current threading mode. Deliveries already queued
+     * still run, but later deliveries are no longer ordered behind them.
+     */
+    public void disableAdaptivePlacement() {
+        this.adaptivePlacement = null;
+    }
+
+    AdaptivePlacement<T, F> adaptivePlacement() {
+        return adaptivePlacement;
+    }
+
+    /**
+     * Returns whether observables may call the {@link #directListener()} in the triggering thread
+     * right away. False for adaptive listeners, whose deliveries have to be timed and ordered.
+     *
+     * @return true if the direct listener can be invoked inline
+     */
+    public boolean inlineFastPath() {
+        return adaptivePlacement == null && useSameThread;
     }
 
     public void close() {
         value.removeListener(listener);
     }
 
+    /**
+     * Two threaded listeners are equal if they wrap the same listener. The threading mode is left
+     * out because it can change while the listener is stored in a hash based collection.
+     */
     @Override
     public boolean equals(Object obj) {
-        if (obj instanceof ThreadedListener other) {
-            return Objects.equals(this.listener, other.listener) &&
-                    this.useSameThread == other.useSameThread;
+        if (obj instanceof ThreadedListener<?, ?> other) {
+            return Objects.equals(this.listener, other.listener);
         }
         return false;
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(listener, useSameThread);
+        return Objects.hashCode(listener);
     }
 
     @Override
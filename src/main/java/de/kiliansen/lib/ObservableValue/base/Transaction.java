@@ -0,0 +1,285 @@
+package de.kiliansen.lib.ObservableValue.base;
+
+import de.kiliansen.lib.ObservableValue.value.IObservableValue;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+
+/**
+ * Groups mutations of several observables into one all-or-nothing step.
+ * <p>
+ * Mutations staged on a transaction are not applied until {@link #commit()}. On commit they are
+ * applied in order while holding the transaction write lock, so code reading through
+ * {@link #readIsolated(Supplier)} sees either none or all of them. Plain getters such as
+ * {@code get()} or {@code size()} do not take that lock and may observe a commit half-applied.
+ * Change events raised while applying are buffered per observable, coalesced (consecutive updates
+ * of the same value, key or index collapse into one) and delivered in a single pass after the lock
+ * has been released. {@link #rollback()}, or closing the transaction without committing, drops all
+ * staged mutations.
+ * <p>
+ * Every applied mutation records how to undo it. If a staged mutation throws during commit, the
+ * mutations applied before it are undone in reverse order while the lock is still held, their
+ * buffered events are dropped and the exception is rethrown; exceptions thrown while undoing are
+ * added to it as suppressed. Undoing restores the values that were replaced, so it is exact as long
+ * as no other thread mutates the same observables outside of a transaction meanwhile. A transaction
+ * is meant to be used by a single thread.
+ *
+ * <pre>{@code
+ * try (Transaction tx = Transaction.begin()) {
+ *     tx.set(status, "FILLED");
+ *     tx.put(positions, "ACME", 100);
+ *     tx.add(auditRows, row);
+ *     tx.commit();
+ * }
+ * }</pre>
+ */
+public final class Transaction implements AutoCloseable {
+    private static final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private static final ThreadLocal<Transaction> committing = new ThreadLocal<>();
+    private static final AtomicInteger activeCommits = new AtomicInteger();
+
+    private final List<Supplier<Runnable>> mutations = new ArrayList<>();
+    private final Map<BaseObservable<?, ?>, List<IChangeDef<?>>> changes = new IdentityHashMap<>();
+    private final List<BaseObservable<?, ?>> changed = new ArrayList<>();
+    private State state = State.OPEN;
+
+    private Transaction() {
+    }
+
+    /**
+     * Starts a new transaction.
+     *
+     * @return the transaction
+     */
+    public static Transaction begin() {
+        return new Transaction();
+    }
+
+    /**
+     * Runs a reader while no transaction is being committed, so that it observes all observables
+     * either before or after any given commit. Reads outside of this method are not isolated from
+     * commits. Must not commit a transaction itself.
+     *
+     * @param reader the reader to run
+     *
+     * @return the reader's result
+     */
+    public static <R> R readIsolated(Supplier<R> reader) {
+        lock.readLock().lock();
+        try {
+            return reader.get();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Stages setting an observable value. Undone by setting the previous value again.
+     *
+     * @param target the observable value
+     * @param value  the new value
+     */
+    public <T> void set(IObservableValue<T> target, T value) {
+        stage(() -> {
+            T previous = target.get();
+            target.set(value);
+            return () -> target.set(previous);
+        });
+    }
+
+    /**
+     * Stages putting an entry into a map, e.g. an {@code ObservableMap}. Undone by restoring the
+     * previous value or removing the key again.
+     *
+     * @param target the map
+     * @param key    the key
+     * @param value  the value
+     */
+    public <K, V> void put(Map<K, V> target, K key, V value) {
+        stage(() -> {
+            boolean existed = target.containsKey(key);
+            V previous = target.put(key, value);
+            return existed ? () -> target.put(key, previous) : () -> target.remove(key);
+        });
+    }
+
+    /**
+     * Stages removing an entry from a map, e.g. an {@code ObservableMap}. Undone by putting the
+     * removed value back.
+     *
+     * @param target the map
+     * @param key    the key to remove
+     */
+    public <K, V> void remove(Map<K, V> target, K key) {
+        stage(() -> {
+            if (!target.containsKey(key)) return () -> {};
+            V previous = target.remove(key);
+            return () -> target.put(key, previous);
+        });
+    }
+
+    /**
+     * Stages appending an element to a list, e.g. an {@code ObservableList}. Undone by removing the
+     * last occurrence of the element.
+     *
+     * @param target  the list
+     * @param element the element to append
+     */
+    public <E> void add(List<E> target, E element) {
+        stage(() -> {
+            target.add(element);
+            return () -> target.remove(target.lastIndexOf(element));
+        });
+    }
+
+    /**
+     * Stages an arbitrary mutation of one or more observables.
+     *
+     * @param mutation the mutation to run on commit
+     * @param undo     reverts the mutation if a later mutation of the same commit fails
+     */
+    public void stage(Runnable mutation, Runnable undo) {
+        if (mutation == null || undo == null) {
+            throw new IllegalArgumentException("Mutation and undo cannot be null");
+        }
+        stage(() -> {
+            mutation.run();
+            return undo;
+        });
+    }
+
+    /**
+     * Stages a mutation that applies itself and returns how to undo what it applied.
+     */
+    private void stage(Supplier<Runnable> mutation) {
+        checkOpen();
+        mutations.add(mutation);
+    }
+
+    /**
+     * Applies all staged mutations under the transaction write lock and then notifies listeners once
+     * per coalesced change. Only {@link #readIsolated(Supplier)} waits for the mutations to be
+     * complete; plain getters may observe them one by one. If a mutation throws, the mutations
+     * applied before it are undone, no listener is notified and the exception is rethrown. If a
+     * listener throws, the other observables are still notified and the first exception is rethrown
+     * with the later ones suppressed.
+     *
+     * @throws IllegalStateException if the transaction was already committed or rolled back
+     */
+    public void commit() {
+        checkOpen();
+        state = State.COMMITTED;
+
+        List<Runnable> undoLog = new ArrayList<>(mutations.size());
+        committing.set(this);
+        activeCommits.incrementAndGet();
+        lock.writeLock().lock();
+        try {
+            for (Supplier<Runnable> mutation : mutations) {
+                undoLog.add(mutation.get());
+            }
+        } catch (RuntimeException | Error e) {
+            undo(undoLog, e);
+            changes.clear();
+            changed.clear();
+            throw e;
+        } finally {
+            lock.writeLock().unlock();
+            activeCommits.decrementAndGet();
+            committing.remove();
+            dispatchChanges();
+        }
+    }
+
+    /**
+     * Delivers the buffered events of every changed observable. A throwing listener only stops the
+     * delivery for its own observable.
+     */
+    private void dispatchChanges() {
+        Throwable failure = null;
+        for (BaseObservable<?, ?> target : changed) {
+            try {
+                dispatch(target, changes.get(target));
+            } catch (RuntimeException | Error e) {
+                if (failure == null) failure = e;
+                else failure.addSuppressed(e);
+            }
+        }
+        if (failure instanceof RuntimeException e) throw e;
+        if (failure instanceof Error e) throw e;
+    }
+
+    private static void undo(List<Runnable> undoLog, Throwable failure) {
+        for (int i = undoLog.size() - 1; i >= 0; i--) {
+            try {
+                undoLog.get(i).run();
+            } catch (RuntimeException | Error e) {
+                failure.addSuppressed(e);
+            }
+        }
+    }
+
+    /**
+     * Drops all staged mutations.
+     */
+    public void rollback() {
+        checkOpen();
+        state = State.ROLLED_BACK;
+        mutations.clear();
+    }
+
+    /**
+     * Rolls back the transaction unless it has been committed or rolled back already.
+     */
+    @Override
+    public void close() {
+        if (state == State.OPEN) rollback();
+    }
+
+    private void checkOpen() {
+        if (state != State.OPEN) {
+            throw new IllegalStateException("Transaction is already " + state.name().toLowerCase().replace('_', ' '));
+        }
+    }
+
+    /**
+     * Returns true if the current thread is committing a transaction and change events it raises
+     * have to be passed to {@link #capture(BaseObservable, IChangeDef)}.
+     */
+    static boolean isCommitting() {
+        return activeCommits.get() != 0 && committing.get() != null;
+    }
+
+    /**
+     * Buffers a change event raised by the committing thread.
+     *
+     * @return true if the event was buffered and must not be delivered now
+     */
+    static boolean capture(BaseObservable<?, ?> source, IChangeDef<?> changeDef) {
+        Transaction tx = committing.get();
+        if (tx == null) return false;
+        tx.changes.computeIfAbsent(source, s -> {
+            tx.changed.add(s);
+            return new ArrayList<>();
+        }).add(changeDef);
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T, F extends IChangeDef<T>> void dispatch(BaseObservable<T, F> target, List<IChangeDef<?>> buffered) {
+        for (F changeDef : target.coalesce((List<F>) (List<?>) buffered)) {
+            target.trigger(changeDef);
+        }
+    }
+
+    private enum State {
+        OPEN,
+        COMMITTED,
+        ROLLED_BACK
+    }
+}
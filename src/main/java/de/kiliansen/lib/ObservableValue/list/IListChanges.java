@@ -1,89 +1,98 @@
 package de.kiliansen.lib.ObservableValue.list;
 
 import de.kiliansen.lib.ObservableValue.base.ThreadedListener;
-import de.kiliansen.lib.ObservableValue.util.TriConsumer;
 
-import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 
 public interface IListChanges<T> {
     ThreadedListener<T, ObservableListChangeDef<T>> onChange(Consumer<ObservableListChangeDef<T>> listener, boolean useSameThread);
 
-    default ThreadedListener<T, ObservableListChangeDef<T>> onAdd(TriConsumer<T, T, Integer> listener, boolean useSameThread) {
-        return onChange(change -> {
-            if (change.listChangeType() == ObservableListChangeDef.ListChangeType.ADD) {
-                listener.accept(change.oldValue(), change.newValue(), change.index());
+    /**
+     * Registers a listener that receives the fields of each change as arguments. When called in the
+     * same thread, no change definition is allocated for it.
+     *
+     * @param listener      the listener to register
+     * @param useSameThread if true, the listener will be called in the same thread that modifies the list
+     *
+     * @return an AutoCloseable that can be used to unregister the listener
+     */
+    ThreadedListener<T, ObservableListChangeDef<T>> onChange(ListChangeListener<T> listener, boolean useSameThread);
+
+    default ThreadedListener<T, ObservableListChangeDef<T>> onAdd(IndexedChangeListener<T> listener, boolean useSameThread) {
+        return onChange((index, oldValue, newValue, type) -> {
+            if (type == ObservableListChangeDef.ListChangeType.ADD) {
+                listener.accept(oldValue, newValue, index);
             }
         }, useSameThread);
     }
 
-    default ThreadedListener<T, ObservableListChangeDef<T>> onAdd(BiConsumer<T, Integer> listener, boolean useSameThread) {
-        return onChange(change -> {
-            if (change.listChangeType() == ObservableListChangeDef.ListChangeType.ADD) {
-                listener.accept(change.newValue(), change.index());
+    default ThreadedListener<T, ObservableListChangeDef<T>> onAdd(IndexedValueListener<T> listener, boolean useSameThread) {
+        return onChange((index, oldValue, newValue, type) -> {
+            if (type == ObservableListChangeDef.ListChangeType.ADD) {
+                listener.accept(newValue, index);
             }
         }, useSameThread);
     }
 
-    default ThreadedListener<T, ObservableListChangeDef<T>> onAdd(TriConsumer<T, T, Integer> listener) {
+    default ThreadedListener<T, ObservableListChangeDef<T>> onAdd(IndexedChangeListener<T> listener) {
         return onAdd(listener, false);
     }
 
-    default ThreadedListener<T, ObservableListChangeDef<T>> onAdd(BiConsumer<T, Integer> listener) {
+    default ThreadedListener<T, ObservableListChangeDef<T>> onAdd(IndexedValueListener<T> listener) {
         return onAdd(listener, false);
     }
 
-    default ThreadedListener<T, ObservableListChangeDef<T>> onRemove(TriConsumer<T, T, Integer> listener, boolean useSameThread) {
-        return onChange(change -> {
-            if (change.listChangeType() == ObservableListChangeDef.ListChangeType.REMOVE) {
-                listener.accept(change.oldValue(), change.newValue(), change.index());
+    default ThreadedListener<T, ObservableListChangeDef<T>> onRemove(IndexedChangeListener<T> listener, boolean useSameThread) {
+        return onChange((index, oldValue, newValue, type) -> {
+            if (type == ObservableListChangeDef.ListChangeType.REMOVE) {
+                listener.accept(oldValue, newValue, index);
             }
         }, useSameThread);
     }
 
-    default ThreadedListener<T, ObservableListChangeDef<T>> onRemove(BiConsumer<T, Integer> listener, boolean useSameThread) {
-        return onChange(change -> {
-            if (change.listChangeType() == ObservableListChangeDef.ListChangeType.REMOVE) {
-                listener.accept(change.oldValue(), change.index());
+    default ThreadedListener<T, ObservableListChangeDef<T>> onRemove(IndexedValueListener<T> listener, boolean useSameThread) {
+        return onChange((index, oldValue, newValue, type) -> {
+            if (type == ObservableListChangeDef.ListChangeType.REMOVE) {
+                listener.accept(oldValue, index);
             }
         }, useSameThread);
     }
 
-    default ThreadedListener<T, ObservableListChangeDef<T>> onRemove(TriConsumer<T, T, Integer> listener) {
+    default ThreadedListener<T, ObservableListChangeDef<T>> onRemove(IndexedChangeListener<T> listener) {
         return onRemove(listener, false);
     }
 
-    default ThreadedListener<T, ObservableListChangeDef<T>> onRemove(BiConsumer<T, Integer> listener) {
+    default ThreadedListener<T, ObservableListChangeDef<T>> onRemove(IndexedValueListener<T> listener) {
         return onRemove(listener, false);
     }
 
-    default ThreadedListener<T, ObservableListChangeDef<T>> onUpdate(TriConsumer<T, T, Integer> listener, boolean useSameThread) {
-        return onChange(change -> {
-            if (change.listChangeType() == ObservableListChangeDef.ListChangeType.UPDATE) {
-                listener.accept(change.oldValue(), change.newValue(), change.index());
+    default ThreadedListener<T, ObservableListChangeDef<T>> onUpdate(IndexedChangeListener<T> listener, boolean useSameThread) {
+        return onChange((index, oldValue, newValue, type) -> {
+            if (type == ObservableListChangeDef.ListChangeType.UPDATE) {
+                listener.accept(oldValue, newValue, index);
             }
         }, useSameThread);
     }
 
-    default ThreadedListener<T, ObservableListChangeDef<T>> onUpdate(BiConsumer<T, Integer> listener, boolean useSameThread) {
-        return onChange(change -> {
-            if (change.listChangeType() == ObservableListChangeDef.ListChangeType.UPDATE) {
-                listener.accept(change.newValue(), change.index());
+    default ThreadedListener<T, ObservableListChangeDef<T>> onUpdate(IndexedValueListener<T> listener, boolean useSameThread) {
+        return onChange((index, oldValue, newValue, type) -> {
+            if (type == ObservableListChangeDef.ListChangeType.UPDATE) {
+                listener.accept(newValue, index);
             }
         }, useSameThread);
     }
 
-    default ThreadedListener<T, ObservableListChangeDef<T>> onUpdate(TriConsumer<T, T, Integer> listener) {
+    default ThreadedListener<T, ObservableListChangeDef<T>> onUpdate(IndexedChangeListener<T> listener) {
         return onUpdate(listener, false);
     }
 
-    default ThreadedListener<T, ObservableListChangeDef<T>> onUpdate(BiConsumer<T, Integer> listener) {
+    default ThreadedListener<T, ObservableListChangeDef<T>> onUpdate(IndexedValueListener<T> listener) {
         return onUpdate(listener, false);
     }
 
     default ThreadedListener<T, ObservableListChangeDef<T>> onClear(Runnable listener, boolean useSameThread) {
-        return onChange(change -> {
-            if (change.listChangeType() == ObservableListChangeDef.ListChangeType.CLEAR) {
+        return onChange((index, oldValue, newValue, type) -> {
+            if (type == ObservableListChangeDef.ListChangeType.CLEAR) {
                 listener.run();
             }
         }, useSameThread);
@@ -92,4 +101,35 @@ public interface IListChanges<T> {
     default ThreadedListener<T, ObservableListChangeDef<T>> onClear(Runnable listener) {
         return onClear(listener, false);
     }
+
+    /**
+     * A list change listener that receives the change fields directly instead of a change definition.
+     */
+    @FunctionalInterface
+    interface ListChangeListener<T> {
+        void onChange(int index, T oldValue, T newValue, ObservableListChangeDef.ListChangeType type);
+    }
+
+    /**
+     * Receives the old and new value of an added, removed or updated element together with its
+     * index. The index is passed as a primitive, so it is never boxed.
+     * <p>
+     * Replaces the {@code TriConsumer<T, T, Integer>} the helpers used to take. Keeping both
+     * overloads would make every lambda ambiguous, so an existing {@code TriConsumer} is passed as a
+     * method reference, e.g. {@code list.onAdd(listener::accept)}.
+     */
+    @FunctionalInterface
+    interface IndexedChangeListener<T> {
+        void accept(T oldValue, T newValue, int index);
+    }
+
+    /**
+     * Receives the added, removed or updated element together with its index. The index is passed as
+     * a primitive, so it is never boxed. Replaces the {@code BiConsumer<T, Integer>} the helpers used
+     * to take, see {@link IndexedChangeListener}.
+     */
+    @FunctionalInterface
+    interface IndexedValueListener<T> {
+        void accept(T value, int index);
+    }
 }
@@ -11,20 +11,195 @@ import java.util.function.Consumer;
 public class ObservableList<T> extends BaseObservable<T, ObservableListChangeDef<T>> implements List<T>, IListChanges<T> {
     private final List<T> values;
 
+    /**
+     * Serializes mutations together with the creation of their change events, so the index and
+     * neighbouring values of each event describe the list as that mutation left it. Listeners are
+     * never called while it is held. Reads go to the copy-on-write list without locking.
+     */
+    private final Object lock = new Object();
+
+    /**
+     * Changes applied under the lock that wait for the delivering thread, in mutation order. Each
+     * is counted as a deferred delivery until it has been delivered, so flushes wait for it.
+     * Guarded by the lock.
+     */
+    private final ArrayDeque<Pending<T>> pending = new ArrayDeque<>();
+
+    /**
+     * Whether a thread is delivering changes. Only one thread delivers at a time, so listeners see
+     * changes in mutation order; a mutation made meanwhile is queued and delivered by that thread.
+     * Guarded by the lock.
+     */
+    private boolean delivering;
+
     /**
      * Constructs an ObservableValue with a null initial value.
      */
     public ObservableList() {
-        setNamingStrategy(threadInfo ->
-                ObservableList.class.getSimpleName() + "-Thread-" + threadInfo.id());
         this.values = new CopyOnWriteArrayList<>();
     }
 
+    /**
+     * Registers a listener for the changes of this list.
+     * <p>
+     * Listeners are never called while the list is locked for a mutation, and only one thread
+     * delivers changes at a time so that every listener sees them in mutation order. If another
+     * thread is delivering when a mutation happens, that thread also delivers the new change: a
+     * same-thread listener then runs on the other writer's thread, possibly after the mutating call
+     * has returned, and an exception it throws is rethrown to that writer. {@link #flush()} waits
+     * for such changes as well.
+     *
+     * @param listener      the listener to register
+     * @param useSameThread if true, the listener runs on the thread delivering the change, see above
+     *
+     * @return an AutoCloseable that can be used to unregister the listener
+     */
     @Override
     public ThreadedListener<T, ObservableListChangeDef<T>> onChange(Consumer<ObservableListChangeDef<T>> listener, boolean useSameThread) {
         return onChangeDef(listener, useSameThread);
     }
 
+    /**
+     * Registers a listener that receives the fields of each change. Delivered like the listeners of
+     * {@link #onChange(Consumer, boolean)}.
+     *
+     * @param listener      the listener to register
+     * @param useSameThread if true, the listener runs on the thread delivering the change
+     *
+     * @return an AutoCloseable that can be used to unregister the listener
+     */
+    @Override
+    public ThreadedListener<T, ObservableListChangeDef<T>> onChange(ListChangeListener<T> listener, boolean useSameThread) {
+        Consumer<ObservableListChangeDef<T>> changeListener = changeDef ->
+                listener.onChange(changeDef.index(), changeDef.oldValue(), changeDef.newValue(), changeDef.listChangeType());
+        return onChangeDef(changeListener, listener, useSameThread);
+    }
+
+    /**
+     * Hands a change over for delivery. Must be called while holding the lock, right after the
+     * mutation. The change is captured by a committing transaction, queued if another thread is
+     * delivering, or else left to the caller, which then delivers without allocating.
+     *
+     * @return true if the caller has to pass the change to {@link #deliver} after releasing the lock
+     */
+    private boolean publish(int index, T oldValue, T newValue, ObservableListChangeDef.ListChangeType type) {
+        if (committing() && capture(new ObservableListChangeDef<>(index, oldValue, newValue, type))) return false;
+        if (delivering) {
+            pending.add(new Pending<>(new ObservableListChangeDef<>(index, oldValue, newValue, type), deferDelivery()));
+            return false;
+        }
+        delivering = true;
+        return true;
+    }
+
+    /**
+     * Queues a change of a mutation that raises several. Must be called while holding the lock;
+     * the caller then calls {@link #claimDelivery()}.
+     */
+    private void enqueue(int index, T oldValue, T newValue, ObservableListChangeDef.ListChangeType type) {
+        if (committing() && capture(new ObservableListChangeDef<>(index, oldValue, newValue, type))) return;
+        pending.add(new Pending<>(new ObservableListChangeDef<>(index, oldValue, newValue, type), deferDelivery()));
+    }
+
+    /**
+     * Must be called while holding the lock.
+     *
+     * @return true if the caller has to call {@link #drain(Throwable)} after releasing the lock
+     */
+    private boolean claimDelivery() {
+        if (delivering || pending.isEmpty()) return false;
+        delivering = true;
+        return true;
+    }
+
+    /**
+     * Delivers a change published by the calling thread and then all changes queued meanwhile.
+     */
+    private void deliver(int index, T oldValue, T newValue, ObservableListChangeDef.ListChangeType type) {
+        Throwable failure = null;
+        try {
+            fire(index, oldValue, newValue, type, null);
+        } catch (RuntimeException | Error e) {
+            failure = e;
+        }
+        drain(failure);
+    }
+
+    /**
+     * Delivers queued changes until the queue is empty, then gives up delivering. A listener that
+     * throws does not stop the delivery of later changes; the first exception is rethrown at the end.
+     */
+    private void drain(Throwable failure) {
+        while (true) {
+            Pending<T> next;
+            synchronized (lock) {
+                next = pending.poll();
+                if (next == null) {
+                    delivering = false;
+                    break;
+                }
+            }
+            ObservableListChangeDef<T> change = next.change();
+            try {
+                fire(change.index(), change.oldValue(), change.newValue(), change.listChangeType(), next.deferred());
+            } catch (RuntimeException | Error e) {
+                if (failure == null) failure = e;
+                else failure.addSuppressed(e);
+            } finally {
+                next.deferred().delivered();
+            }
+        }
+        if (failure instanceof RuntimeException e) throw e;
+        if (failure instanceof Error e) throw e;
+    }
+
+    /**
+     * Notifies all listeners of a change. Same-thread {@link ListChangeListener}s receive the fields
+     * directly; a change definition is only allocated once some other listener needs one.
+     */
+    @SuppressWarnings("unchecked")
+    private void fire(int index, T oldValue, T newValue, ObservableListChangeDef.ListChangeType type, DeferredDelivery deferred) {
+        ObservableListChangeDef<T> changeDef = null;
+        for (ThreadedListener<T, ObservableListChangeDef<T>> tl : listeners()) {
+            if (tl.inlineFastPath() && tl.directListener() instanceof ListChangeListener<?> direct) {
+                ((ListChangeListener<T>) direct).onChange(index, oldValue, newValue, type);
+                continue;
+            }
+            if (changeDef == null) changeDef = new ObservableListChangeDef<>(index, oldValue, newValue, type);
+            deliver(tl, changeDef, deferred);
+        }
+    }
+
+    @Override
+    public void trigger(ObservableListChangeDef<T> changeDef) {
+        boolean deliver;
+        synchronized (lock) {
+            deliver = publish(changeDef.index(), changeDef.oldValue(), changeDef.newValue(), changeDef.listChangeType());
+        }
+        if (deliver) deliver(changeDef.index(), changeDef.oldValue(), changeDef.newValue(), changeDef.listChangeType());
+    }
+
+    /**
+     * Collapses consecutive updates of the same index within a transaction into one update from the
+     * first old value to the last new value. Other changes shift indices and are kept as they are.
+     */
+    @Override
+    protected List<ObservableListChangeDef<T>> coalesce(List<ObservableListChangeDef<T>> changes) {
+        List<ObservableListChangeDef<T>> coalesced = new ArrayList<>(changes.size());
+        for (ObservableListChangeDef<T> change : changes) {
+            int last = coalesced.size() - 1;
+            if (last >= 0 && change.listChangeType() == ObservableListChangeDef.ListChangeType.UPDATE) {
+                ObservableListChangeDef<T> previous = coalesced.get(last);
+                if (previous.listChangeType() == ObservableListChangeDef.ListChangeType.UPDATE && previous.index() == change.index()) {
+                    coalesced.set(last, new ObservableListChangeDef<>(change.index(), previous.oldValue(), change.newValue(), change.listChangeType()));
+                    continue;
+                }
+            }
+            coalesced.add(change);
+        }
+        return coalesced;
+    }
+
     @Override
     public int size() {
         return values.size();
@@ -57,34 +232,38 @@ public class ObservableList<T> extends BaseObservable<T, ObservableListChangeDef
 
     @Override
     public boolean add(T t) {
-        values.add(t);
-        var index = values.lastIndexOf(t);
-
-        T oldValue = null;
-        if (index > 0 && index < values.size()) {
-            oldValue = values.get(index - 1);
+        int index;
+        T oldValue;
+        boolean deliver;
+        synchronized (lock) {
+            values.add(t);
+            index = values.size() - 1;
+            oldValue = index > 0 ? values.get(index - 1) : null;
+            deliver = publish(index, oldValue, t, ObservableListChangeDef.ListChangeType.ADD);
         }
-
-        trigger(new ObservableListChangeDef<>(index, oldValue, t, ObservableListChangeDef.ListChangeType.ADD));
+        if (deliver) deliver(index, oldValue, t, ObservableListChangeDef.ListChangeType.ADD);
         return true;
     }
 
     @Override
     public boolean remove(Object o) {
-        int index = values.indexOf(o);
-        if (index >= 0) {
-            var ret = values.remove(o);
-            if (!ret) return false;
+        int index;
+        T oldValue;
+        T newValue = null;
+        boolean deliver;
+        synchronized (lock) {
+            index = values.indexOf(o);
+            if (index < 0) return false;
+            oldValue = values.remove(index);
 
-            T newValue = null;
             if (index < values.size()) {
                 newValue = values.get(index);
             }
 
-            trigger(new ObservableListChangeDef<>(index, (T) o, newValue, ObservableListChangeDef.ListChangeType.REMOVE));
-            return true;
+            deliver = publish(index, oldValue, newValue, ObservableListChangeDef.ListChangeType.REMOVE);
         }
-        return false;
+        if (deliver) deliver(index, oldValue, newValue, ObservableListChangeDef.ListChangeType.REMOVE);
+        return true;
     }
 
     @Override
@@ -94,24 +273,38 @@ public class ObservableList<T> extends BaseObservable<T, ObservableListChangeDef
 
     @Override
     public boolean addAll(Collection<? extends T> c) {
-        boolean r = values.addAll(c);
-        if (r) {
-            for (T item : c) {
-                trigger(new ObservableListChangeDef<>(values.lastIndexOf(item), null, item, ObservableListChangeDef.ListChangeType.ADD));
-            }
+        var a = c.stream().toList();
+        boolean r;
+        boolean deliver;
+        synchronized (lock) {
+            r = insert(values.size(), a);
+            deliver = claimDelivery();
         }
+        if (deliver) drain(null);
         return r;
     }
 
     @Override
     public boolean addAll(int index, Collection<? extends T> c) {
-        boolean r = values.addAll(index, c);
         var a = c.stream().toList();
+        boolean r;
+        boolean deliver;
+        synchronized (lock) {
+            r = insert(index, a);
+            deliver = claimDelivery();
+        }
+        if (deliver) drain(null);
+        return r;
+    }
+
+    /**
+     * Inserts the elements and queues one change per element. Must be called while holding the lock.
+     */
+    private boolean insert(int index, List<? extends T> a) {
+        boolean r = values.addAll(index, a);
         if (r) {
             for (int i = 0; i < a.size(); i++) {
-                var item = a.get(i);
-                int actualIndex = index + i;
-                trigger(new ObservableListChangeDef<>(actualIndex, null, item, ObservableListChangeDef.ListChangeType.ADD));
+                enqueue(index + i, null, a.get(i), ObservableListChangeDef.ListChangeType.ADD);
             }
         }
         return r;
@@ -120,14 +313,18 @@ public class ObservableList<T> extends BaseObservable<T, ObservableListChangeDef
     @Override
     public boolean removeAll(Collection<?> c) {
         boolean changed = false;
-        for (Object item : c) {
-            int index = values.indexOf(item);
-            if (index >= 0) {
-                values.remove(index);
-                trigger(new ObservableListChangeDef<>(index, (T) item, null, ObservableListChangeDef.ListChangeType.REMOVE));
-                changed = true;
+        boolean deliver;
+        synchronized (lock) {
+            for (Object item : c) {
+                int index = values.indexOf(item);
+                if (index >= 0) {
+                    enqueue(index, values.remove(index), null, ObservableListChangeDef.ListChangeType.REMOVE);
+                    changed = true;
+                }
             }
+            deliver = claimDelivery();
         }
+        if (deliver) drain(null);
         return changed;
     }
 
@@ -138,9 +335,13 @@ public class ObservableList<T> extends BaseObservable<T, ObservableListChangeDef
 
     @Override
     public void clear() {
-        if (values.isEmpty()) return;
-        values.clear();
-        trigger(new ObservableListChangeDef<>(0, null, null, ObservableListChangeDef.ListChangeType.CLEAR));
+        boolean deliver;
+        synchronized (lock) {
+            if (values.isEmpty()) return;
+            values.clear();
+            deliver = publish(0, null, null, ObservableListChangeDef.ListChangeType.CLEAR);
+        }
+        if (deliver) deliver(0, null, null, ObservableListChangeDef.ListChangeType.CLEAR);
     }
 
     @Override
@@ -150,30 +351,43 @@ public class ObservableList<T> extends BaseObservable<T, ObservableListChangeDef
 
     @Override
     public T set(int index, T element) {
-        T oldValue = values.get(index);
-        values.set(index, element);
-        trigger(new ObservableListChangeDef<>(index, oldValue, element, ObservableListChangeDef.ListChangeType.UPDATE));
+        T oldValue;
+        boolean deliver;
+        synchronized (lock) {
+            oldValue = values.set(index, element);
+            deliver = publish(index, oldValue, element, ObservableListChangeDef.ListChangeType.UPDATE);
+        }
+        if (deliver) deliver(index, oldValue, element, ObservableListChangeDef.ListChangeType.UPDATE);
         return oldValue;
     }
 
     @Override
     public void add(int index, T element) {
         T oldValue = null;
-        if (index < values.size() && index >= 0) {
-            oldValue = values.get(index);
+        boolean deliver;
+        synchronized (lock) {
+            if (index < values.size() && index >= 0) {
+                oldValue = values.get(index);
+            }
+            values.add(index, element);
+            deliver = publish(index, oldValue, element, ObservableListChangeDef.ListChangeType.ADD);
         }
-        values.add(index, element);
-        trigger(new ObservableListChangeDef<>(index, oldValue, element, ObservableListChangeDef.ListChangeType.ADD));
+        if (deliver) deliver(index, oldValue, element, ObservableListChangeDef.ListChangeType.ADD);
     }
 
     @Override
     public T remove(int index) {
-        T oldValue = values.remove(index);
+        T oldValue;
         T newValue = null;
-        if (index < values.size()) {
-            newValue = values.get(index);
+        boolean deliver;
+        synchronized (lock) {
+            oldValue = values.remove(index);
+            if (index < values.size()) {
+                newValue = values.get(index);
+            }
+            deliver = publish(index, oldValue, newValue, ObservableListChangeDef.ListChangeType.REMOVE);
         }
-        trigger(new ObservableListChangeDef<>(index, oldValue, newValue, ObservableListChangeDef.ListChangeType.REMOVE));
+        if (deliver) deliver(index, oldValue, newValue, ObservableListChangeDef.ListChangeType.REMOVE);
         return oldValue;
     }
 
@@ -201,4 +415,10 @@ public class ObservableList<T> extends BaseObservable<T, ObservableListChangeDef
     public List<T> subList(int fromIndex, int toIndex) {
         return values.subList(fromIndex, toIndex);
     }
-}
\ No newline at end of file
+
+    /**
+     * A change waiting for the delivering thread and its deferred delivery.
+     */
+    private record Pending<T>(ObservableListChangeDef<T> change, DeferredDelivery deferred) {
+    }
+}
@@ -0,0 +1,271 @@
+package de.kiliansen.lib.ObservableValue.map;
+
+import java.util.AbstractMap;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * A persistent hash array mapped trie. Every update returns a new trie that shares all untouched
+ * nodes with its predecessor, so older versions stay valid and can be read without locking.
+ * Null keys and values are not supported; a null key slot marks a reference to a sub node.
+ */
+final class HashTrie {
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+    private static final int MAX_DEPTH = 8;
+
+    static final Node EMPTY = new BitmapNode(0, new Object[0]);
+
+    private HashTrie() {
+    }
+
+    static int hash(Object key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Receives the previous value of an updated or removed key.
+     *
+     * @param <V> the value type of the trie the result is used with
+     */
+    static final class Result<V> {
+        Object oldValue;
+        boolean sizeChanged;
+
+        @SuppressWarnings("unchecked") // The trie stores values untyped, but only ever holds values of type V
+        V oldValue() {
+            return (V) oldValue;
+        }
+    }
+
+    abstract static class Node {
+        abstract Object get(int shift, int hash, Object key);
+
+        abstract Node put(int shift, int hash, Object key, Object value, Result<?> result);
+
+        /**
+         * @return the updated node, or null if the node became empty
+         */
+        abstract Node remove(int shift, int hash, Object key, Result<?> result);
+
+        abstract Object[] array();
+    }
+
+    static final class BitmapNode extends Node {
+        private final int bitmap;
+        private final Object[] array;
+
+        BitmapNode(int bitmap, Object[] array) {
+            this.bitmap = bitmap;
+            this.array = array;
+        }
+
+        private static int bitpos(int hash, int shift) {
+            return 1 << ((hash >>> shift) & MASK);
+        }
+
+        private int index(int bit) {
+            return Integer.bitCount(bitmap & (bit - 1));
+        }
+
+        @Override
+        Object get(int shift, int hash, Object key) {
+            int bit = bitpos(hash, shift);
+            if ((bitmap & bit) == 0) return null;
+            int i = index(bit) << 1;
+            Object k = array[i];
+            if (k == null) return ((Node) array[i + 1]).get(shift + BITS, hash, key);
+            return key.equals(k) ? array[i + 1] : null;
+        }
+
+        @Override
+        Node put(int shift, int hash, Object key, Object value, Result<?> result) {
+            int bit = bitpos(hash, shift);
+            int i = index(bit) << 1;
+            if ((bitmap & bit) == 0) {
+                Object[] updated = new Object[array.length + 2];
+                System.arraycopy(array, 0, updated, 0, i);
+                updated[i] = key;
+                updated[i + 1] = value;
+                System.arraycopy(array, i, updated, i + 2, array.length - i);
+                result.sizeChanged = true;
+                return new BitmapNode(bitmap | bit, updated);
+            }
+            Object k = array[i];
+            Object v = array[i + 1];
+            if (k == null) {
+                Node sub = ((Node) v).put(shift + BITS, hash, key, value, result);
+                return sub == v ? this : with(i + 1, sub);
+            }
+            if (key.equals(k)) {
+                result.oldValue = v;
+                return v == value ? this : with(i + 1, value);
+            }
+            result.sizeChanged = true;
+            Node sub = pair(shift + BITS, k, v, hash, key, value);
+            Object[] updated = array.clone();
+            updated[i] = null;
+            updated[i + 1] = sub;
+            return new BitmapNode(bitmap, updated);
+        }
+
+        @Override
+        Node remove(int shift, int hash, Object key, Result<?> result) {
+            int bit = bitpos(hash, shift);
+            if ((bitmap & bit) == 0) return this;
+            int i = index(bit) << 1;
+            Object k = array[i];
+            Object v = array[i + 1];
+            if (k == null) {
+                Node sub = ((Node) v).remove(shift + BITS, hash, key, result);
+                if (sub == v) return this;
+                return sub != null ? with(i + 1, sub) : without(bit, i);
+            }
+            if (!key.equals(k)) return this;
+            result.oldValue = v;
+            result.sizeChanged = true;
+            return without(bit, i);
+        }
+
+        @Override
+        Object[] array() {
+            return array;
+        }
+
+        private Node with(int i, Object value) {
+            Object[] updated = array.clone();
+            updated[i] = value;
+            return new BitmapNode(bitmap, updated);
+        }
+
+        private Node without(int bit, int i) {
+            if (bitmap == bit) return null;
+            Object[] updated = new Object[array.length - 2];
+            System.arraycopy(array, 0, updated, 0, i);
+            System.arraycopy(array, i + 2, updated, i, array.length - i - 2);
+            return new BitmapNode(bitmap ^ bit, updated);
+        }
+
+        private static Node pair(int shift, Object k1, Object v1, int h2, Object k2, Object v2) {
+            int h1 = hash(k1);
+            if (h1 == h2) return new CollisionNode(h1, new Object[]{k1, v1, k2, v2});
+            Result<?> ignored = new Result<>();
+            return EMPTY.put(shift, h1, k1, v1, ignored).put(shift, h2, k2, v2, ignored);
+        }
+    }
+
+    static final class CollisionNode extends Node {
+        private final int hash;
+        private final Object[] array;
+
+        CollisionNode(int hash, Object[] array) {
+            this.hash = hash;
+            this.array = array;
+        }
+
+        private int find(Object key) {
+            for (int i = 0; i < array.length; i += 2) {
+                if (key.equals(array[i])) return i;
+            }
+            return -1;
+        }
+
+        @Override
+        Object get(int shift, int hash, Object key) {
+            int i = find(key);
+            return i < 0 ? null : array[i + 1];
+        }
+
+        @Override
+        Node put(int shift, int hash, Object key, Object value, Result<?> result) {
+            if (hash != this.hash) {
+                int bit = 1 << ((this.hash >>> shift) & MASK);
+                return new BitmapNode(bit, new Object[]{null, this}).put(shift, hash, key, value, result);
+            }
+            int i = find(key);
+            if (i >= 0) {
+                result.oldValue = array[i + 1];
+                if (array[i + 1] == value) return this;
+                Object[] updated = array.clone();
+                updated[i + 1] = value;
+                return new CollisionNode(hash, updated);
+            }
+            Object[] updated = Arrays.copyOf(array, array.length + 2);
+            updated[array.length] = key;
+            updated[array.length + 1] = value;
+            result.sizeChanged = true;
+            return new CollisionNode(hash, updated);
+        }
+
+        @Override
+        Node remove(int shift, int hash, Object key, Result<?> result) {
+            int i = find(key);
+            if (i < 0) return this;
+            result.oldValue = array[i + 1];
+            result.sizeChanged = true;
+            if (array.length == 2) return null;
+            Object[] updated = new Object[array.length - 2];
+            System.arraycopy(array, 0, updated, 0, i);
+            System.arraycopy(array, i + 2, updated, i, array.length - i - 2);
+            return new CollisionNode(hash, updated);
+        }
+
+        @Override
+        Object[] array() {
+            return array;
+        }
+    }
+
+    /**
+     * Depth-first iterator over all entries of a trie.
+     */
+    static final class EntryIterator<K, V> implements Iterator<Map.Entry<K, V>> {
+        private final Object[][] arrays = new Object[MAX_DEPTH + 1][];
+        private final int[] positions = new int[MAX_DEPTH + 1];
+        private int depth;
+        private Map.Entry<K, V> next;
+
+        EntryIterator(Node root) {
+            arrays[0] = root.array();
+            advance();
+        }
+
+        @SuppressWarnings("unchecked")
+        private void advance() {
+            next = null;
+            while (depth >= 0) {
+                Object[] array = arrays[depth];
+                int i = positions[depth];
+                if (i >= array.length) {
+                    depth--;
+                    continue;
+                }
+                positions[depth] = i + 2;
+                if (array[i] == null) {
+                    depth++;
+                    arrays[depth] = ((Node) array[i + 1]).array();
+                    positions[depth] = 0;
+                } else {
+                    next = new AbstractMap.SimpleImmutableEntry<>((K) array[i], (V) array[i + 1]);
+                    return;
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public Map.Entry<K, V> next() {
+            if (next == null) throw new NoSuchElementException();
+            Map.Entry<K, V> entry = next;
+            advance();
+            return entry;
+        }
+    }
+}
@@ -9,10 +9,21 @@ import java.util.function.Consumer;
 public interface IMapChanges<K, V> {
     ThreadedListener<MapTypes<K, V>, ObservableMapChangeDef<MapTypes<K, V>, K, V>> onChange(Consumer<ObservableMapChangeDef<MapTypes<K, V>, K, V>> listener, boolean useSameThread);
 
+    /**
+     * Registers a listener that receives the fields of each change as arguments. When called in the
+     * same thread, no change definition is allocated for it.
+     *
+     * @param listener      the listener to register
+     * @param useSameThread if true, the listener will be called in the same thread that modifies the map
+     *
+     * @return an AutoCloseable that can be used to unregister the listener
+     */
+    ThreadedListener<MapTypes<K, V>, ObservableMapChangeDef<MapTypes<K, V>, K, V>> onChange(MapChangeListener<K, V> listener, boolean useSameThread);
+
     default ThreadedListener<MapTypes<K, V>, ObservableMapChangeDef<MapTypes<K, V>, K, V>> onPut(TriConsumer<K, V, V> listener, boolean useSameThread) {
-        return onChange(change -> {
-            if (change.mapChangeType() == MapChangeType.PUT) {
-                listener.accept(change.key(), change.oldValue(), change.newValue());
+        return onChange((key, oldValue, newValue, type) -> {
+            if (type == MapChangeType.PUT) {
+                listener.accept(key, oldValue, newValue);
             }
         }, useSameThread);
     }
@@ -31,9 +42,9 @@ public interface IMapChanges<K, V> {
     }
 
     default ThreadedListener<MapTypes<K, V>, ObservableMapChangeDef<MapTypes<K, V>, K, V>> onRemove(TriConsumer<K, V, V> listener, boolean useSameThread) {
-        return onChange(change -> {
-            if (change.mapChangeType() == MapChangeType.REMOVE) {
-                listener.accept(change.key(), change.oldValue(), change.newValue());
+        return onChange((key, oldValue, newValue, type) -> {
+            if (type == MapChangeType.REMOVE) {
+                listener.accept(key, oldValue, newValue);
             }
         }, useSameThread);
     }
@@ -52,8 +63,8 @@ public interface IMapChanges<K, V> {
     }
 
     default ThreadedListener<MapTypes<K, V>, ObservableMapChangeDef<MapTypes<K, V>, K, V>> onClear(Runnable listener, boolean useSameThread) {
-        return onChange(change -> {
-            if (change.mapChangeType() == MapChangeType.CLEAR) {
+        return onChange((key, oldValue, newValue, type) -> {
+            if (type == MapChangeType.CLEAR) {
                 listener.run();
             }
         }, useSameThread);
@@ -62,4 +73,12 @@ public interface IMapChanges<K, V> {
     default ThreadedListener<MapTypes<K, V>, ObservableMapChangeDef<MapTypes<K, V>, K, V>> onClear(Runnable listener) {
         return onClear(listener, false);
     }
+
+    /**
+     * A map change listener that receives the change fields directly instead of a change definition.
+     */
+    @FunctionalInterface
+    interface MapChangeListener<K, V> {
+        void onChange(K key, V oldValue, V newValue, MapChangeType type);
+    }
 }
@@ -0,0 +1,119 @@
+package de.kiliansen.lib.ObservableValue.map;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An immutable, point-in-time view of an {@link ObservableMap}. Snapshots are taken in constant time
+ * and share their structure with the map they were taken from.
+ * <p>
+ * Every snapshot carries the version of the last mutation it contains. A reader that starts from a
+ * snapshot can stay consistent with the map by applying only change events whose
+ * {@link ObservableMapChangeDef#version()} is greater than {@link #version()}.
+ *
+ * @param <K> the key type
+ * @param <V> the value type
+ */
+public final class MapSnapshot<K, V> extends AbstractMap<K, V> {
+    private static final MapSnapshot<?, ?> EMPTY = new MapSnapshot<>(HashTrie.EMPTY, 0, 0);
+
+    private final HashTrie.Node root;
+    private final int size;
+    private final long version;
+
+    private MapSnapshot(HashTrie.Node root, int size, long version) {
+        this.root = root;
+        this.size = size;
+        this.version = version;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <K, V> MapSnapshot<K, V> empty() {
+        return (MapSnapshot<K, V>) EMPTY;
+    }
+
+    /**
+     * Returns the version of the last mutation contained in this snapshot.
+     *
+     * @return the snapshot version
+     */
+    public long version() {
+        return version;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        if (key == null) return null;
+        return (V) root.get(0, HashTrie.hash(key), key);
+    }
+
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Entry<K, V>> iterator() {
+                return new HashTrie.EntryIterator<>(root);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    /**
+     * Returns a snapshot with the given mapping added or replaced and the version incremented.
+     */
+    MapSnapshot<K, V> with(K key, V value, HashTrie.Result<V> result) {
+        HashTrie.Node updated = root.put(0, HashTrie.hash(key), key, value, result);
+        return new MapSnapshot<>(updated, result.sizeChanged ? size + 1 : size, version + 1);
+    }
+
+    /**
+     * Returns a snapshot without the given key and the version incremented, or this snapshot if
+     * the key is not present.
+     */
+    MapSnapshot<K, V> without(Object key, HashTrie.Result<V> result) {
+        HashTrie.Node updated = root.remove(0, HashTrie.hash(key), key, result);
+        if (updated == root) return this;
+        return new MapSnapshot<>(updated == null ? HashTrie.EMPTY : updated, size - 1, version + 1);
+    }
+
+    /**
+     * Returns an empty snapshot with the version incremented.
+     */
+    MapSnapshot<K, V> cleared() {
+        return new MapSnapshot<>(HashTrie.EMPTY, 0, version + 1);
+    }
+
+    /**
+     * Returns a snapshot containing all entries of the given map, at version zero.
+     */
+    static <K, V> MapSnapshot<K, V> of(Map<? extends K, ? extends V> map) {
+        MapSnapshot<K, V> snapshot = empty();
+        for (Entry<? extends K, ? extends V> entry : map.entrySet()) {
+            snapshot = snapshot.with(entry.getKey(), entry.getValue(), new HashTrie.Result<>());
+        }
+        return new MapSnapshot<>(snapshot.root, snapshot.size, 0);
+    }
+}
@@ -1,77 +1,389 @@
 package de.kiliansen.lib.ObservableValue.map;
 
 import de.kiliansen.lib.ObservableValue.base.BaseObservable;
+import de.kiliansen.lib.ObservableValue.base.PartitionedDispatcher;
 import de.kiliansen.lib.ObservableValue.base.ThreadedListener;
 import de.kiliansen.lib.ObservableValue.value.ObservableValue;
 
+import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
 
 public class ObservableMap<K, V> extends BaseObservable<MapTypes<K, V>, ObservableMapChangeDef<MapTypes<K, V>, K, V>> implements Map<K, V>, IMapChanges<K, V> {
-    private final Map<K, V> delegate;
+    private final AtomicReference<MapSnapshot<K, V>> state;
+    private volatile Partitioning partitioning;
+    private volatile boolean transactionCoalescing = true;
 
     public ObservableMap() {
-        setNamingStrategy(threadInfo ->
-                ObservableMap.class.getSimpleName() + "-Thread-" + threadInfo.id());
-        this.delegate = new ConcurrentHashMap<>();
+        this.state = new AtomicReference<>(MapSnapshot.empty());
     }
 
     public ObservableMap(Map<K, V> initialMap) {
-        setNamingStrategy(threadInfo ->
-                ObservableMap.class.getSimpleName() + "-Thread-" + threadInfo.id());
-        this.delegate = new ConcurrentHashMap<>(initialMap);
+        this.state = new AtomicReference<>(MapSnapshot.of(initialMap));
     }
 
     public ThreadedListener<MapTypes<K, V>, ObservableMapChangeDef<MapTypes<K, V>, K, V>> onChange(Consumer<ObservableMapChangeDef<MapTypes<K, V>, K, V>> listener, boolean useSameThread) {
         return super.onChangeDef(listener, useSameThread);
     }
 
+    @Override
+    public ThreadedListener<MapTypes<K, V>, ObservableMapChangeDef<MapTypes<K, V>, K, V>> onChange(MapChangeListener<K, V> listener, boolean useSameThread) {
+        Consumer<ObservableMapChangeDef<MapTypes<K, V>, K, V>> changeListener = changeDef ->
+                listener.onChange(changeDef.key(), changeDef.oldValue(), changeDef.newValue(), changeDef.mapChangeType());
+        return super.onChangeDef(changeListener, listener, useSameThread);
+    }
+
+    /**
+     * Notifies all listeners of a change. Same-thread {@link MapChangeListener}s receive the fields
+     * directly; a change definition is only allocated once some other listener needs one.
+     */
+    private void fire(ThreadedListener<MapTypes<K, V>, ObservableMapChangeDef<MapTypes<K, V>, K, V>>[] listeners,
+                      K key, V oldValue, V newValue, MapChangeType type, long version) {
+        ObservableMapChangeDef<MapTypes<K, V>, K, V> changeDef = null;
+        for (ThreadedListener<MapTypes<K, V>, ObservableMapChangeDef<MapTypes<K, V>, K, V>> tl : listeners) {
+            changeDef = fire(tl, changeDef, key, oldValue, newValue, type, version);
+        }
+    }
+
+    /**
+     * Notifies one listener of a change.
+     *
+     * @param changeDef the change definition allocated for a previous listener, or null
+     *
+     * @return the change definition if one has been allocated by now
+     */
+    @SuppressWarnings("unchecked")
+    private ObservableMapChangeDef<MapTypes<K, V>, K, V> fire(ThreadedListener<MapTypes<K, V>, ObservableMapChangeDef<MapTypes<K, V>, K, V>> tl,
+                                                             ObservableMapChangeDef<MapTypes<K, V>, K, V> changeDef,
+                                                             K key, V oldValue, V newValue, MapChangeType type, long version) {
+        if (tl.inlineFastPath() && tl.directListener() instanceof MapChangeListener<?, ?> direct) {
+            ((MapChangeListener<K, V>) direct).onChange(key, oldValue, newValue, type);
+            return changeDef;
+        }
+        if (changeDef == null) changeDef = new ObservableMapChangeDef<>(key, oldValue, newValue, type, version);
+        deliver(tl, changeDef);
+        return changeDef;
+    }
+
+    /**
+     * Notifies all listeners of a change that has been applied while {@code locked} was held, or
+     * without a lock if partitioned dispatch is off. Asynchronous listeners are handed their
+     * deliveries before the lock is released, so they enter their lanes in the order the lock
+     * serialized the changes. Every listener that may run in the calling thread, including adaptive
+     * listeners currently placed there, is called after it has been released, so no listener code
+     * runs under a lane lock.
+     */
+    private void publish(Partitioning locked, Object lockKey, K key, V oldValue, V newValue, MapChangeType type, long version) {
+        if (committing() && capture(new ObservableMapChangeDef<>(key, oldValue, newValue, type, version))) {
+            if (locked != null) locked.unlock(lockKey);
+            return;
+        }
+        ThreadedListener<MapTypes<K, V>, ObservableMapChangeDef<MapTypes<K, V>, K, V>>[] listeners = listeners();
+        if (locked == null) {
+            fire(listeners, key, oldValue, newValue, type, version);
+            return;
+        }
+        ObservableMapChangeDef<MapTypes<K, V>, K, V> changeDef = null;
+        BitSet sameThread = null;
+        try {
+            for (int i = 0; i < listeners.length; i++) {
+                // Decided once per listener, so a concurrent setUseSameThread can neither deliver it
+                // twice nor make it run under the lock
+                if (!listeners[i].inlineFastPath()) {
+                    if (changeDef == null) changeDef = new ObservableMapChangeDef<>(key, oldValue, newValue, type, version);
+                    if (tryHandOver(listeners[i], changeDef)) continue;
+                }
+                if (sameThread == null) sameThread = new BitSet(listeners.length);
+                sameThread.set(i);
+            }
+        } finally {
+            locked.unlock(lockKey);
+        }
+        if (sameThread == null) return;
+        for (int i = sameThread.nextSetBit(0); i >= 0; i = sameThread.nextSetBit(i + 1)) {
+            changeDef = fire(listeners[i], changeDef, key, oldValue, newValue, type, version);
+        }
+    }
+
+    @Override
+    public void trigger(ObservableMapChangeDef<MapTypes<K, V>, K, V> changeDef) {
+        Partitioning locked = lockPartitioning(changeDef.key());
+        publish(locked, changeDef.key(), changeDef.key(), changeDef.oldValue(), changeDef.newValue(), changeDef.mapChangeType(), changeDef.version());
+    }
+
+    /**
+     * Collapses the changes of a transaction into one net change per key, ordered by the key's last
+     * change. A {@code CLEAR} supersedes all changes before it. The versions of collapsed changes are
+     * not delivered, see {@link #setTransactionCoalescing(boolean)}.
+     */
+    @Override
+    protected List<ObservableMapChangeDef<MapTypes<K, V>, K, V>> coalesce(List<ObservableMapChangeDef<MapTypes<K, V>, K, V>> changes) {
+        if (!transactionCoalescing) return changes;
+        ObservableMapChangeDef<MapTypes<K, V>, K, V> clear = null;
+        Map<K, ObservableMapChangeDef<MapTypes<K, V>, K, V>> first = new LinkedHashMap<>();
+        Map<K, ObservableMapChangeDef<MapTypes<K, V>, K, V>> last = new LinkedHashMap<>();
+        for (ObservableMapChangeDef<MapTypes<K, V>, K, V> change : changes) {
+            if (change.mapChangeType() == MapChangeType.CLEAR) {
+                clear = change;
+                first.clear();
+                last.clear();
+                continue;
+            }
+            first.putIfAbsent(change.key(), change);
+            last.remove(change.key());
+            last.put(change.key(), change);
+        }
+
+        List<ObservableMapChangeDef<MapTypes<K, V>, K, V>> coalesced = new ArrayList<>(last.size() + 1);
+        if (clear != null) coalesced.add(clear);
+        for (ObservableMapChangeDef<MapTypes<K, V>, K, V> change : last.values()) {
+            V oldValue = first.get(change.key()).oldValue();
+            if (Objects.equals(oldValue, change.newValue())) continue;
+            coalesced.add(new ObservableMapChangeDef<>(change.key(), oldValue, change.newValue(), change.mapChangeType(), change.version()));
+        }
+        return coalesced;
+    }
+
+    /**
+     * Sets whether changes made by a {@link de.kiliansen.lib.ObservableValue.base.Transaction} are
+     * collapsed into one net change per key (the default). Listeners that rely on receiving every
+     * {@link ObservableMapChangeDef#version() version}, such as a replication leader, need this
+     * disabled.
+     *
+     * @param enabled whether to coalesce transactional changes
+     */
+    public void setTransactionCoalescing(boolean enabled) {
+        this.transactionCoalescing = enabled;
+    }
+
     @Override
     public V put(Object key, Object value) {
         if (key == null || value == null) {
             throw new IllegalArgumentException("Key and value must match the map's type parameters.");
         }
-        K k = (K) key;
-        V v = (V) value;
-        V oldValue = delegate.put(k, v);
-        trigger(new ObservableMapChangeDef<>(k, oldValue, v, MapChangeType.PUT));
+        // put(Object, Object) is kept for compatibility; callers are trusted to pass a K and a V
+        @SuppressWarnings("unchecked") K k = (K) key;
+        @SuppressWarnings("unchecked") V v = (V) value;
+        HashTrie.Result<V> result = new HashTrie.Result<>();
+        Partitioning locked = lockPartitioning(k);
+        MapSnapshot<K, V> updated;
+        try {
+            updated = update(current -> current.with(k, v, result), result);
+        } catch (RuntimeException | Error e) {
+            if (locked != null) locked.unlock(k);
+            throw e;
+        }
+        V oldValue = result.oldValue();
+        publish(locked, k, k, oldValue, v, MapChangeType.PUT, updated.version());
         return oldValue;
     }
 
+    /**
+     * Delivers asynchronous listeners on a fixed number of single-threaded lanes chosen by
+     * {@code key.hashCode()}. Changes of the same key reach each listener in version order, changes
+     * of different keys are processed in parallel, and {@code CLEAR} waits for all lanes. Replaces a
+     * previously enabled dispatcher; ordering is not guaranteed across the switch.
+     * <p>
+     * To keep the order, a mutation and the hand-off of its asynchronous deliveries happen under a
+     * lock per lane, so writers of keys in the same lane are serialized. Same-thread listeners are
+     * still called without holding it.
+     *
+     * @param lanes the number of lanes
+     */
+    public void enablePartitionedDispatch(int lanes) {
+        replacePartitioning(new Partitioning(new PartitionedDispatcher(lanes, ObservableMap.class.getSimpleName())));
+    }
+
+    /**
+     * Returns asynchronous delivery to the shared executor. Changes already queued on a lane are
+     * still delivered.
+     */
+    public void disablePartitionedDispatch() {
+        replacePartitioning(null);
+    }
+
+    /**
+     * Swaps the partitioning while holding all lane locks of the previous one, so no writer hands a
+     * delivery to its lanes after they have been shut down.
+     */
+    private void replacePartitioning(Partitioning next) {
+        Partitioning previous;
+        synchronized (state) {
+            previous = partitioning;
+            if (previous != null) previous.lock(null);
+            partitioning = next;
+            if (previous != null) previous.unlock(null);
+        }
+        if (previous != null) previous.dispatcher.close();
+    }
+
+    /**
+     * Locks the lane of a key, or all lanes for a null key, of the current partitioning.
+     *
+     * @return the locked partitioning, or null if partitioned dispatch is off
+     */
+    private Partitioning lockPartitioning(Object key) {
+        while (true) {
+            Partitioning current = partitioning;
+            if (current == null) return null;
+            current.lock(key);
+            if (partitioning == current) return current;
+            current.unlock(key);
+        }
+    }
+
+    /**
+     * Returns the number of deliveries waiting in each lane, or an empty array if partitioned
+     * dispatch is not enabled.
+     *
+     * @return the queue depth per lane
+     */
+    public int[] getLaneQueueDepths() {
+        Partitioning current = partitioning;
+        return current == null ? new int[0] : current.dispatcher.getQueueDepths();
+    }
+
+    /**
+     * Routes deliveries handed over under a lane lock to that lane. Deliveries made without it, e.g.
+     * by a writer that started before partitioned dispatch was enabled, use the shared executor.
+     */
+    @Override
+    protected java.util.concurrent.Executor asyncExecutor(ObservableMapChangeDef<MapTypes<K, V>, K, V> changeDef) {
+        Partitioning current = partitioning;
+        if (current == null || !current.isHeldByCurrentThread(changeDef.key())) return super.asyncExecutor(changeDef);
+        if (changeDef.mapChangeType() == MapChangeType.CLEAR) return current.dispatcher::barrier;
+        return current.dispatcher.lane(changeDef.key().hashCode());
+    }
+
+    /**
+     * A partitioned dispatcher with one lock per lane.
+     */
+    private static final class Partitioning {
+        final PartitionedDispatcher dispatcher;
+        private final ReentrantLock[] locks;
+
+        Partitioning(PartitionedDispatcher dispatcher) {
+            this.dispatcher = dispatcher;
+            this.locks = new ReentrantLock[dispatcher.getLaneCount()];
+            for (int i = 0; i < locks.length; i++) {
+                locks[i] = new ReentrantLock();
+            }
+        }
+
+        /**
+         * Locks the lane of a key, or all lanes in index order for a null key.
+         */
+        void lock(Object key) {
+            if (key != null) {
+                locks[dispatcher.laneIndex(key.hashCode())].lock();
+                return;
+            }
+            for (ReentrantLock lock : locks) {
+                lock.lock();
+            }
+        }
+
+        void unlock(Object key) {
+            if (key != null) {
+                locks[dispatcher.laneIndex(key.hashCode())].unlock();
+                return;
+            }
+            for (int i = locks.length - 1; i >= 0; i--) {
+                locks[i].unlock();
+            }
+        }
+
+        boolean isHeldByCurrentThread(Object key) {
+            return locks[key == null ? 0 : dispatcher.laneIndex(key.hashCode())].isHeldByCurrentThread();
+        }
+    }
+
+    /**
+     * Returns an immutable view of the current contents in constant time. Its
+     * {@link MapSnapshot#version() version} matches the version of the last change event it contains.
+     *
+     * @return a point-in-time snapshot of this map
+     */
+    public MapSnapshot<K, V> snapshot() {
+        return state.get();
+    }
+
+    /**
+     * Returns the version of the most recent mutation.
+     *
+     * @return the current version
+     */
+    public long version() {
+        return state.get().version();
+    }
+
+    /**
+     * Atomically replaces the current state, retrying the update function on contention.
+     */
+    private MapSnapshot<K, V> update(UnaryOperator<MapSnapshot<K, V>> updateFunction, HashTrie.Result<V> result) {
+        MapSnapshot<K, V> current, updated;
+        do {
+            result.oldValue = null;
+            result.sizeChanged = false;
+            current = state.get();
+            updated = updateFunction.apply(current);
+        } while (updated != current && !state.compareAndSet(current, updated));
+        return updated;
+    }
+
     @Override
     public int size() {
-        return delegate.size();
+        return state.get().size();
     }
 
     @Override
     public boolean isEmpty() {
-        return delegate.isEmpty();
+        return state.get().isEmpty();
     }
 
     @Override
     public boolean containsKey(Object key) {
-        return delegate.containsKey(key);
+        return state.get().containsKey(key);
     }
 
     @Override
     public boolean containsValue(Object value) {
-        return delegate.containsValue(value);
+        return state.get().containsValue(value);
     }
 
     @Override
     public V get(Object key) {
-        return delegate.get(key);
+        return state.get().get(key);
     }
 
     @Override
     public V remove(Object key) {
-        V oldValue = delegate.remove(key);
+        if (key == null) return null;
+        HashTrie.Result<V> result = new HashTrie.Result<>();
+        Partitioning locked = lockPartitioning(key);
+        MapSnapshot<K, V> updated;
+        try {
+            updated = update(current -> current.without(key, result), result);
+        } catch (RuntimeException | Error e) {
+            if (locked != null) locked.unlock(key);
+            throw e;
+        }
+        V oldValue = result.oldValue();
         if (oldValue != null) {
-            // Trigger a change event only if the key existed
-            trigger(new ObservableMapChangeDef<>((K) key, oldValue, null, MapChangeType.REMOVE));
+            // Trigger a change event only if the key existed, which makes it a K
+            @SuppressWarnings("unchecked") K removed = (K) key;
+            publish(locked, key, removed, oldValue, null, MapChangeType.REMOVE, updated.version());
+        } else if (locked != null) {
+            locked.unlock(key);
         }
         return oldValue;
     }
@@ -79,31 +391,47 @@ public class ObservableMap<K, V> extends BaseObservable<MapTypes<K, V>, Observab
     @Override
     public void putAll(Map<? extends K, ? extends V> m) {
         for (Map.Entry<? extends K, ? extends V> entry : m.entrySet()) {
-            K key = entry.getKey();
-            V value = entry.getValue();
-            V oldValue = delegate.put(key, value);
-            trigger(new ObservableMapChangeDef<>(key, oldValue, value, MapChangeType.PUT));
+            put(entry.getKey(), entry.getValue());
         }
     }
 
     @Override
     public void clear() {
-        delegate.clear();
-        trigger(new ObservableMapChangeDef<>(null, null, null, MapChangeType.CLEAR));
+        Partitioning locked = lockPartitioning(null);
+        MapSnapshot<K, V> updated;
+        try {
+            updated = update(MapSnapshot::cleared, new HashTrie.Result<>());
+        } catch (RuntimeException | Error e) {
+            if (locked != null) locked.unlock(null);
+            throw e;
+        }
+        publish(locked, null, null, null, null, MapChangeType.CLEAR, updated.version());
     }
 
+    /**
+     * Returns the keys of the current {@link #snapshot()}. The set is immutable and does not
+     * reflect later changes.
+     */
     @Override
     public Set<K> keySet() {
-        return delegate.keySet();
+        return state.get().keySet();
     }
 
+    /**
+     * Returns the values of the current {@link #snapshot()}. The collection is immutable and does
+     * not reflect later changes.
+     */
     @Override
     public Collection<V> values() {
-        return delegate.values();
+        return state.get().values();
     }
 
+    /**
+     * Returns the entries of the current {@link #snapshot()}. The set is immutable and does not
+     * reflect later changes.
+     */
     @Override
     public Set<Entry<K, V>> entrySet() {
-        return delegate.entrySet();
+        return state.get().entrySet();
     }
-}
\ No newline at end of file
+}
@@ -2,6 +2,15 @@ package de.kiliansen.lib.ObservableValue.map;
 
 import de.kiliansen.lib.ObservableValue.base.IChangeDef;
 
+/**
+ * A change of an {@link ObservableMap}.
+ *
+ * @param version the map version produced by this change, see {@link MapSnapshot#version()}
+ */
 public record ObservableMapChangeDef<T extends MapTypes<K, V>, K, V>(K key, V oldValue, V newValue,
-                                                                     MapChangeType mapChangeType) implements IChangeDef<T> {
+                                                                     MapChangeType mapChangeType,
+                                                                     long version) implements IChangeDef<T> {
+    public ObservableMapChangeDef(K key, V oldValue, V newValue, MapChangeType mapChangeType) {
+        this(key, oldValue, newValue, mapChangeType, 0);
+    }
 }
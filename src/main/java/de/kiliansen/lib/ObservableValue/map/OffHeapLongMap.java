@@ -0,0 +1,484 @@
+package de.kiliansen.lib.ObservableValue.map;
+
+import de.kiliansen.lib.ObservableValue.base.BaseObservable;
+import de.kiliansen.lib.ObservableValue.base.ThreadedListener;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+
+/**
+ * An observable {@code long -> long} map that keeps its entries outside the Java heap.
+ * <p>
+ * Entries live in a single {@link MemorySegment} split into stripes. Each stripe is an
+ * open-addressing table with linear probing and 16 bytes per slot, guarded by its own
+ * {@link StampedLock}; lookups first probe optimistically without locking. The capacity is fixed
+ * when the map is created, so the table never has to be rehashed. Key {@code 0} marks free slots
+ * and is stored in the stripe header instead.
+ * <p>
+ * The map fires the same {@link ObservableMapChangeDef} events as {@link ObservableMap}. Keys and
+ * values are only boxed for them if listeners are registered. A map created with
+ * {@link #mapped(Path, long)} is backed by a memory-mapped file and keeps its contents across
+ * restarts.
+ */
+public class OffHeapLongMap extends BaseObservable<MapTypes<Long, Long>, ObservableMapChangeDef<MapTypes<Long, Long>, Long, Long>> implements IMapChanges<Long, Long>, AutoCloseable {
+    private static final long MAGIC = 0x4F48_4C4D_4150_0001L;
+    private static final long HEADER_SIZE = 32;
+    private static final long STRIPE_HEADER_SIZE = 32;
+    private static final long SLOT_SIZE = 16;
+    private static final double MAX_LOAD = 0.75;
+
+    private static final ValueLayout.OfLong LONG = ValueLayout.JAVA_LONG;
+
+    private final Arena arena;
+    private final FileChannel channel;
+    private final MemorySegment segment;
+    private final StampedLock[] locks;
+    private final int stripeShift;
+    private final long slotsPerStripe;
+    private final long slotMask;
+
+    private OffHeapLongMap(Arena arena, FileChannel channel, MemorySegment segment, int stripes, long slotsPerStripe) {
+        this.arena = arena;
+        this.channel = channel;
+        this.segment = segment;
+        this.locks = new StampedLock[stripes];
+        for (int i = 0; i < stripes; i++) {
+            locks[i] = new StampedLock();
+        }
+        this.stripeShift = 64 - Integer.numberOfTrailingZeros(stripes);
+        this.slotsPerStripe = slotsPerStripe;
+        this.slotMask = slotsPerStripe - 1;
+    }
+
+    /**
+     * Creates a map in native memory that holds at least {@code capacity} entries.
+     *
+     * @param capacity the number of entries the map must be able to hold
+     */
+    public OffHeapLongMap(long capacity) {
+        this(Geometry.of(capacity), Arena.ofShared());
+    }
+
+    private OffHeapLongMap(Geometry geometry, Arena arena) {
+        this(arena, null, geometry.allocate(arena), geometry.stripes, geometry.slotsPerStripe);
+    }
+
+    /**
+     * Opens a map backed by a memory-mapped file. An existing file is reused with its contents and
+     * its original capacity; otherwise the file is created for at least {@code capacity} entries.
+     * Changes reach the file through the operating system; {@link #force()} writes them out
+     * immediately.
+     *
+     * @param file     the backing file
+     * @param capacity the number of entries a newly created map must be able to hold
+     *
+     * @return the mapped map
+     *
+     * @throws IOException if the file cannot be opened or was not written by this class
+     */
+    public static OffHeapLongMap mapped(Path file, long capacity) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        Arena arena = Arena.ofShared();
+        try {
+            Geometry geometry;
+            boolean created = channel.size() == 0;
+            if (created) {
+                geometry = Geometry.of(capacity);
+            } else {
+                MemorySegment header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE, arena);
+                if (header.get(LONG, 0) != MAGIC) {
+                    throw new IOException("Not an " + OffHeapLongMap.class.getSimpleName() + " file: " + file);
+                }
+                geometry = new Geometry((int) header.get(LONG, 8), header.get(LONG, 16));
+                if (channel.size() != geometry.byteSize()) {
+                    throw new IOException("Truncated " + OffHeapLongMap.class.getSimpleName() + " file: " + file);
+                }
+            }
+            MemorySegment segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, geometry.byteSize(), arena);
+            if (created) geometry.writeHeader(segment);
+            return new OffHeapLongMap(arena, channel, segment, geometry.stripes, geometry.slotsPerStripe);
+        } catch (IOException | RuntimeException e) {
+            arena.close();
+            channel.close();
+            throw e;
+        }
+    }
+
+    public ThreadedListener<MapTypes<Long, Long>, ObservableMapChangeDef<MapTypes<Long, Long>, Long, Long>> onChange(Consumer<ObservableMapChangeDef<MapTypes<Long, Long>, Long, Long>> listener, boolean useSameThread) {
+        return super.onChangeDef(listener, useSameThread);
+    }
+
+    @Override
+    public ThreadedListener<MapTypes<Long, Long>, ObservableMapChangeDef<MapTypes<Long, Long>, Long, Long>> onChange(MapChangeListener<Long, Long> listener, boolean useSameThread) {
+        Consumer<ObservableMapChangeDef<MapTypes<Long, Long>, Long, Long>> changeListener = changeDef ->
+                listener.onChange(changeDef.key(), changeDef.oldValue(), changeDef.newValue(), changeDef.mapChangeType());
+        return super.onChangeDef(changeListener, listener, useSameThread);
+    }
+
+    /**
+     * Notifies all listeners of a change. Nothing is boxed if no listener is registered.
+     */
+    @SuppressWarnings("unchecked")
+    private void fire(Long key, Long oldValue, Long newValue, MapChangeType type) {
+        if (committing() && capture(new ObservableMapChangeDef<>(key, oldValue, newValue, type))) return;
+        ObservableMapChangeDef<MapTypes<Long, Long>, Long, Long> changeDef = null;
+        for (ThreadedListener<MapTypes<Long, Long>, ObservableMapChangeDef<MapTypes<Long, Long>, Long, Long>> tl : listeners()) {
+            if (tl.inlineFastPath() && tl.directListener() instanceof MapChangeListener<?, ?> direct) {
+                ((MapChangeListener<Long, Long>) direct).onChange(key, oldValue, newValue, type);
+                continue;
+            }
+            if (changeDef == null) changeDef = new ObservableMapChangeDef<>(key, oldValue, newValue, type);
+            deliver(tl, changeDef);
+        }
+    }
+
+    private boolean observed() {
+        return listeners().length != 0 || committing();
+    }
+
+    @Override
+    public void trigger(ObservableMapChangeDef<MapTypes<Long, Long>, Long, Long> changeDef) {
+        fire(changeDef.key(), changeDef.oldValue(), changeDef.newValue(), changeDef.mapChangeType());
+    }
+
+    /**
+     * Returns the value for a key.
+     *
+     * @param key          the key
+     * @param defaultValue the value to return if the key is absent
+     *
+     * @return the value, or {@code defaultValue}
+     */
+    public long get(long key, long defaultValue) {
+        long hash = hash(key);
+        int stripe = stripe(hash);
+        StampedLock lock = locks[stripe];
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            long value = lookup(stripe, hash, key, defaultValue);
+            if (lock.validate(stamp)) return value;
+        }
+        stamp = lock.readLock();
+        try {
+            return lookup(stripe, hash, key, defaultValue);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Returns whether the map contains a key.
+     *
+     * @param key the key
+     *
+     * @return true if the key is present
+     */
+    public boolean containsKey(long key) {
+        long hash = hash(key);
+        int stripe = stripe(hash);
+        long stamp = locks[stripe].readLock();
+        try {
+            return key == 0 ? segment.get(LONG, stripeHeader(stripe) + 8) != 0 : find(stripe, hash, key) >= 0;
+        } finally {
+            locks[stripe].unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Associates a value with a key.
+     *
+     * @param key          the key
+     * @param value        the value
+     * @param defaultValue the value to return if the key was absent
+     *
+     * @return the previous value, or {@code defaultValue}
+     *
+     * @throws IllegalStateException if the key is new and its stripe is full
+     */
+    public long put(long key, long value, long defaultValue) {
+        long hash = hash(key);
+        int stripe = stripe(hash);
+        long header = stripeHeader(stripe);
+        boolean existed;
+        long oldValue;
+
+        long stamp = locks[stripe].writeLock();
+        try {
+            if (key == 0) {
+                existed = segment.get(LONG, header + 8) != 0;
+                oldValue = segment.get(LONG, header + 16);
+                segment.set(LONG, header + 16, value);
+                if (!existed) {
+                    segment.set(LONG, header + 8, 1);
+                    segment.set(LONG, header, segment.get(LONG, header) + 1);
+                }
+            } else {
+                long base = stripeBase(stripe);
+                long slot = hash & slotMask;
+                while (true) {
+                    long current = segment.get(LONG, base + slot * SLOT_SIZE);
+                    if (current == key) {
+                        existed = true;
+                        oldValue = segment.get(LONG, base + slot * SLOT_SIZE + 8);
+                        break;
+                    }
+                    if (current == 0) {
+                        long size = segment.get(LONG, header);
+                        if (size >= slotsPerStripe - 1) {
+                            throw new IllegalStateException("Capacity exceeded, the stripe for key " + key + " is full");
+                        }
+                        existed = false;
+                        oldValue = 0;
+                        segment.set(LONG, base + slot * SLOT_SIZE, key);
+                        segment.set(LONG, header, size + 1);
+                        break;
+                    }
+                    slot = (slot + 1) & slotMask;
+                }
+                segment.set(LONG, base + slot * SLOT_SIZE + 8, value);
+            }
+        } finally {
+            locks[stripe].unlockWrite(stamp);
+        }
+
+        if (observed()) fire(key, existed ? oldValue : null, value, MapChangeType.PUT);
+        return existed ? oldValue : defaultValue;
+    }
+
+    /**
+     * Removes a key.
+     *
+     * @param key          the key
+     * @param defaultValue the value to return if the key was absent
+     *
+     * @return the removed value, or {@code defaultValue}
+     */
+    public long remove(long key, long defaultValue) {
+        long hash = hash(key);
+        int stripe = stripe(hash);
+        long header = stripeHeader(stripe);
+        long oldValue;
+
+        long stamp = locks[stripe].writeLock();
+        try {
+            if (key == 0) {
+                if (segment.get(LONG, header + 8) == 0) return defaultValue;
+                oldValue = segment.get(LONG, header + 16);
+                segment.set(LONG, header + 8, 0);
+                segment.set(LONG, header + 16, 0);
+            } else {
+                long slot = find(stripe, hash, key);
+                if (slot < 0) return defaultValue;
+                long base = stripeBase(stripe);
+                oldValue = segment.get(LONG, base + slot * SLOT_SIZE + 8);
+                deleteSlot(base, slot);
+            }
+            segment.set(LONG, header, segment.get(LONG, header) - 1);
+        } finally {
+            locks[stripe].unlockWrite(stamp);
+        }
+
+        // Trigger a change event only if the key existed
+        if (observed()) fire(key, oldValue, null, MapChangeType.REMOVE);
+        return oldValue;
+    }
+
+    /**
+     * Removes all entries. Stripes are cleared one after another, so concurrent writers to other
+     * stripes may survive a clear.
+     */
+    public void clear() {
+        for (int stripe = 0; stripe < locks.length; stripe++) {
+            long stamp = locks[stripe].writeLock();
+            try {
+                segment.asSlice(stripeHeader(stripe), STRIPE_HEADER_SIZE).fill((byte) 0);
+                segment.asSlice(stripeBase(stripe), slotsPerStripe * SLOT_SIZE).fill((byte) 0);
+            } finally {
+                locks[stripe].unlockWrite(stamp);
+            }
+        }
+        if (observed()) fire(null, null, null, MapChangeType.CLEAR);
+    }
+
+    /**
+     * Returns the number of entries.
+     *
+     * @return the size
+     */
+    public long size() {
+        long size = 0;
+        for (int stripe = 0; stripe < locks.length; stripe++) {
+            size += segment.get(LONG, stripeHeader(stripe));
+        }
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Returns the number of entries the map was sized for. Individual stripes may fill up earlier
+     * if keys are distributed unevenly.
+     *
+     * @return the capacity
+     */
+    public long capacity() {
+        return (long) (locks.length * slotsPerStripe * MAX_LOAD);
+    }
+
+    /**
+     * Calls the consumer for every entry. Each stripe is read under its lock, the map as a whole is
+     * not locked.
+     *
+     * @param consumer the consumer to call
+     */
+    public void forEach(EntryConsumer consumer) {
+        for (int stripe = 0; stripe < locks.length; stripe++) {
+            long stamp = locks[stripe].readLock();
+            try {
+                long header = stripeHeader(stripe);
+                if (segment.get(LONG, header + 8) != 0) consumer.accept(0, segment.get(LONG, header + 16));
+                long base = stripeBase(stripe);
+                for (long slot = 0; slot < slotsPerStripe; slot++) {
+                    long key = segment.get(LONG, base + slot * SLOT_SIZE);
+                    if (key != 0) consumer.accept(key, segment.get(LONG, base + slot * SLOT_SIZE + 8));
+                }
+            } finally {
+                locks[stripe].unlockRead(stamp);
+            }
+        }
+    }
+
+    /**
+     * Writes the contents of a file backed map to the storage device. Does nothing for maps in
+     * native memory.
+     */
+    public void force() {
+        if (channel != null) segment.force();
+    }
+
+    /**
+     * Releases the memory, or unmaps the backing file. The map must not be used afterwards.
+     */
+    @Override
+    public void close() throws IOException {
+        removeAllListeners();
+        arena.close();
+        if (channel != null) channel.close();
+    }
+
+    private long lookup(int stripe, long hash, long key, long defaultValue) {
+        if (key == 0) {
+            long header = stripeHeader(stripe);
+            return segment.get(LONG, header + 8) != 0 ? segment.get(LONG, header + 16) : defaultValue;
+        }
+        long slot = find(stripe, hash, key);
+        return slot < 0 ? defaultValue : segment.get(LONG, stripeBase(stripe) + slot * SLOT_SIZE + 8);
+    }
+
+    /**
+     * Returns the slot holding a non-zero key, or -1. The probe is bounded by the stripe size, so an
+     * optimistic read racing with a writer terminates as well.
+     */
+    private long find(int stripe, long hash, long key) {
+        long base = stripeBase(stripe);
+        long slot = hash & slotMask;
+        for (long probes = 0; probes < slotsPerStripe; probes++) {
+            long current = segment.get(LONG, base + slot * SLOT_SIZE);
+            if (current == key) return slot;
+            if (current == 0) return -1;
+            slot = (slot + 1) & slotMask;
+        }
+        return -1;
+    }
+
+    /**
+     * Empties a slot and shifts following entries of the same probe sequence back, so lookups
+     * never need tombstones.
+     */
+    private void deleteSlot(long base, long hole) {
+        long slot = hole;
+        while (true) {
+            slot = (slot + 1) & slotMask;
+            long key = segment.get(LONG, base + slot * SLOT_SIZE);
+            if (key == 0) break;
+            long ideal = hash(key) & slotMask;
+            if (((slot - ideal) & slotMask) >= ((slot - hole) & slotMask)) {
+                segment.set(LONG, base + hole * SLOT_SIZE, key);
+                segment.set(LONG, base + hole * SLOT_SIZE + 8, segment.get(LONG, base + slot * SLOT_SIZE + 8));
+                hole = slot;
+            }
+        }
+        segment.set(LONG, base + hole * SLOT_SIZE, 0);
+        segment.set(LONG, base + hole * SLOT_SIZE + 8, 0);
+    }
+
+    private int stripe(long hash) {
+        return stripeShift == 64 ? 0 : (int) (hash >>> stripeShift);
+    }
+
+    private long stripeHeader(int stripe) {
+        return HEADER_SIZE + stripe * STRIPE_HEADER_SIZE;
+    }
+
+    private long stripeBase(int stripe) {
+        return HEADER_SIZE + locks.length * STRIPE_HEADER_SIZE + stripe * slotsPerStripe * SLOT_SIZE;
+    }
+
+    private static long hash(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        return key ^ (key >>> 33);
+    }
+
+    /**
+     * Receives the entries of an {@link OffHeapLongMap} without boxing.
+     */
+    @FunctionalInterface
+    public interface EntryConsumer {
+        void accept(long key, long value);
+    }
+
+    /**
+     * The number of stripes and slots of a map and the resulting memory layout: a header with the
+     * magic number and the geometry, one header per stripe holding its size and the entry for key
+     * {@code 0}, followed by the slots of all stripes.
+     */
+    private record Geometry(int stripes, long slotsPerStripe) {
+        static Geometry of(long capacity) {
+            if (capacity <= 0) {
+                throw new IllegalArgumentException("Capacity must be greater than 0");
+            }
+            int stripes = (int) Math.min(Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 4), Long.highestOneBit(capacity));
+            long perStripe = (long) Math.ceil(capacity / (double) stripes / MAX_LOAD) + 1;
+            return new Geometry(stripes, Long.highestOneBit(perStripe - 1) << 1);
+        }
+
+        long byteSize() {
+            return HEADER_SIZE + stripes * STRIPE_HEADER_SIZE + stripes * slotsPerStripe * SLOT_SIZE;
+        }
+
+        MemorySegment allocate(Arena arena) {
+            MemorySegment segment = arena.allocate(byteSize(), Long.BYTES);
+            segment.fill((byte) 0);
+            writeHeader(segment);
+            return segment;
+        }
+
+        void writeHeader(MemorySegment segment) {
+            segment.set(LONG, 8, stripes);
+            segment.set(LONG, 16, slotsPerStripe);
+            segment.set(LONG, 0, MAGIC);
+        }
+    }
+}
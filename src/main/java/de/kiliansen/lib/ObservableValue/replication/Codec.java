@@ -0,0 +1,69 @@
+package de.kiliansen.lib.ObservableValue.replication;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Encodes keys or values of a replicated map into the binary wire format.
+ *
+ * @param <T> the encoded type
+ */
+public interface Codec<T> {
+    Codec<String> STRING = new Codec<>() {
+        @Override
+        public void write(DataOutput out, String value) throws IOException {
+            out.writeUTF(value);
+        }
+
+        @Override
+        public String read(DataInput in) throws IOException {
+            return in.readUTF();
+        }
+    };
+
+    Codec<Integer> INTEGER = new Codec<>() {
+        @Override
+        public void write(DataOutput out, Integer value) throws IOException {
+            out.writeInt(value);
+        }
+
+        @Override
+        public Integer read(DataInput in) throws IOException {
+            return in.readInt();
+        }
+    };
+
+    Codec<Long> LONG = new Codec<>() {
+        @Override
+        public void write(DataOutput out, Long value) throws IOException {
+            out.writeLong(value);
+        }
+
+        @Override
+        public Long read(DataInput in) throws IOException {
+            return in.readLong();
+        }
+    };
+
+    /**
+     * Writes a non-null value.
+     *
+     * @param out   the output to write to
+     * @param value the value to write
+     *
+     * @throws IOException if writing fails
+     */
+    void write(DataOutput out, T value) throws IOException;
+
+    /**
+     * Reads a value previously written by {@link #write(DataOutput, Object)}.
+     *
+     * @param in the input to read from
+     *
+     * @return the decoded value
+     *
+     * @throws IOException if reading fails
+     */
+    T read(DataInput in) throws IOException;
+}
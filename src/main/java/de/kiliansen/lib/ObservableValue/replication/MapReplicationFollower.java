@@ -0,0 +1,160 @@
+package de.kiliansen.lib.ObservableValue.replication;
+
+import de.kiliansen.lib.ObservableValue.map.MapChangeType;
+import de.kiliansen.lib.ObservableValue.map.ObservableMap;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Keeps a local {@link ObservableMap} in sync with a {@link MapReplicationLeader}. Replicated changes
+ * are applied through the regular map operations, so local listeners are notified as usual.
+ * <p>
+ * The follower remembers the last leader version it applied and the run of the leader it came from.
+ * After a disconnect it reconnects and asks the leader for the changes following that version,
+ * receiving a fresh snapshot only if the leader no longer has them or is a different run.
+ *
+ * @param <K> the key type
+ * @param <V> the value type
+ */
+public class MapReplicationFollower<K, V> implements AutoCloseable {
+    private static final Duration RECONNECT_DELAY = Duration.ofMillis(250);
+
+    private final ObservableMap<K, V> map;
+    private final Codec<K> keyCodec;
+    private final Codec<V> valueCodec;
+    private final InetSocketAddress leaderAddress;
+    private final Thread thread;
+
+    private volatile long runId;
+    private volatile long version = -1;
+    private volatile boolean running = true;
+    private volatile SocketChannel channel;
+
+    /**
+     * Creates a follower and starts connecting to the leader in the background.
+     *
+     * @param map           the local map to apply changes to
+     * @param keyCodec      the codec for keys
+     * @param valueCodec    the codec for values
+     * @param leaderAddress the address of the leader
+     */
+    public MapReplicationFollower(ObservableMap<K, V> map, Codec<K> keyCodec, Codec<V> valueCodec, InetSocketAddress leaderAddress) {
+        this.map = map;
+        this.keyCodec = keyCodec;
+        this.valueCodec = valueCodec;
+        this.leaderAddress = leaderAddress;
+
+        this.thread = new Thread(this::run, getClass().getSimpleName() + "-" + leaderAddress.getPort());
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Returns the leader version of the most recently applied change, or -1 if nothing has been
+     * applied yet.
+     *
+     * @return the applied leader version
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    private void run() {
+        while (running) {
+            try (SocketChannel socket = SocketChannel.open(leaderAddress)) {
+                channel = socket;
+                socket.socket().setTcpNoDelay(true);
+                ByteBuffer hello = ByteBuffer.allocate(4 + Protocol.HELLO_LENGTH);
+                hello.putInt(Protocol.HELLO_LENGTH).put(Protocol.HELLO).putLong(runId).putLong(version).flip();
+                while (hello.hasRemaining()) socket.write(hello);
+                receive(new DataInputStream(new BufferedInputStream(Channels.newInputStream(socket), 1 << 16)));
+            } catch (IOException e) {
+                if (!running) return;
+                try {
+                    Thread.sleep(RECONNECT_DELAY.toMillis());
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private void receive(DataInputStream in) throws IOException {
+        Map<K, V> snapshot = null;
+        long snapshotRunId = 0;
+        long snapshotVersion = -1;
+        while (running) {
+            in.readInt();
+            byte type = in.readByte();
+            switch (type) {
+                case Protocol.SNAPSHOT_BEGIN -> {
+                    snapshotRunId = in.readLong();
+                    snapshotVersion = in.readLong();
+                    snapshot = new HashMap<>();
+                }
+                case Protocol.SNAPSHOT_CHUNK -> {
+                    if (snapshot == null) throw new IOException("Snapshot chunk without snapshot");
+                    int count = in.readInt();
+                    for (int i = 0; i < count; i++) {
+                        snapshot.put(keyCodec.read(in), valueCodec.read(in));
+                    }
+                }
+                case Protocol.SNAPSHOT_END -> {
+                    if (snapshot == null) throw new IOException("Snapshot end without snapshot");
+                    applySnapshot(snapshot);
+                    version = snapshotVersion;
+                    runId = snapshotRunId;
+                    snapshot = null;
+                }
+                case Protocol.BATCH -> {
+                    long first = in.readLong();
+                    int count = in.readInt();
+                    if (first != version + 1) throw new IOException("Expected version " + (version + 1) + " but got " + first);
+                    for (int i = 0; i < count; i++) {
+                        apply(Protocol.CHANGE_TYPES[in.readByte()], in);
+                        version = first + i;
+                    }
+                }
+                default -> throw new IOException("Unknown frame type " + type);
+            }
+        }
+    }
+
+    private void apply(MapChangeType type, DataInputStream in) throws IOException {
+        switch (type) {
+            case PUT -> map.put(keyCodec.read(in), valueCodec.read(in));
+            case REMOVE -> map.remove(keyCodec.read(in));
+            case CLEAR -> map.clear();
+        }
+    }
+
+    private void applySnapshot(Map<K, V> snapshot) {
+        for (K key : map.keySet()) {
+            if (!snapshot.containsKey(key)) map.remove(key);
+        }
+        for (Map.Entry<K, V> entry : snapshot.entrySet()) {
+            if (!Objects.equals(map.get(entry.getKey()), entry.getValue())) map.put(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Disconnects from the leader and stops reconnecting. The local map keeps its contents.
+     */
+    @Override
+    public void close() throws IOException {
+        running = false;
+        SocketChannel current = channel;
+        if (current != null) current.close();
+        thread.interrupt();
+    }
+}
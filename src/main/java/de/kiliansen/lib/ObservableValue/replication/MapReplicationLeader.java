@@ -0,0 +1,401 @@
+package de.kiliansen.lib.ObservableValue.replication;
+
+import de.kiliansen.lib.ObservableValue.base.ThreadedListener;
+import de.kiliansen.lib.ObservableValue.map.MapChangeType;
+import de.kiliansen.lib.ObservableValue.map.MapSnapshot;
+import de.kiliansen.lib.ObservableValue.map.MapTypes;
+import de.kiliansen.lib.ObservableValue.map.ObservableMap;
+import de.kiliansen.lib.ObservableValue.map.ObservableMapChangeDef;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Streams the changes of an {@link ObservableMap} to {@link MapReplicationFollower}s in other
+ * processes.
+ * <p>
+ * Changes are identified by the map's {@link ObservableMapChangeDef#version() version}. The leader
+ * keeps the most recent changes in a bounded backlog; a follower that reconnects with a version still
+ * covered by the backlog only receives the missing tail, otherwise it first receives a
+ * {@link MapSnapshot} and then the tail following the snapshot version. Changes are shipped in
+ * batches of consecutive versions from a single selector thread. Since every version has to be
+ * shipped, the leader turns off {@link ObservableMap#setTransactionCoalescing(boolean) transaction
+ * coalescing} on the map it replicates.
+ * <p>
+ * A follower is sent a snapshot instead of a tail if its version comes from another leader run or is
+ * ahead of the map. A version that the map has reached but that never arrives in the backlog, e.g.
+ * because a same-thread listener registered before the leader threw or because a failed
+ * {@link de.kiliansen.lib.ObservableValue.base.Transaction} was undone and its changes dropped, is
+ * given up after a second; followers waiting for it resynchronize from a snapshot.
+ *
+ * @param <K> the key type
+ * @param <V> the value type
+ */
+public class MapReplicationLeader<K, V> implements AutoCloseable {
+    public static final int DEFAULT_BACKLOG_SIZE = 1 << 16;
+    public static final int DEFAULT_MAX_BATCH = 512;
+    private static final Duration LOST_VERSION_TIMEOUT = Duration.ofSeconds(1);
+
+    private final ObservableMap<K, V> map;
+    private final Codec<K> keyCodec;
+    private final Codec<V> valueCodec;
+    private final int backlogSize;
+    private final int maxBatch;
+    private final long runId = newRunId();
+
+    private final ConcurrentSkipListMap<Long, ObservableMapChangeDef<MapTypes<K, V>, K, V>> backlog = new ConcurrentSkipListMap<>();
+    private final AtomicInteger backlogCount = new AtomicInteger();
+    private final AtomicLong trimmedThrough = new AtomicLong(-1);
+    private final AtomicBoolean wakeupPending = new AtomicBoolean();
+    private final ThreadedListener<MapTypes<K, V>, ObservableMapChangeDef<MapTypes<K, V>, K, V>> listener;
+
+    private final Selector selector;
+    private final ServerSocketChannel server;
+    private final List<Session> sessions = new ArrayList<>();
+    private final Protocol.FrameWriter frame = new Protocol.FrameWriter();
+    private final Thread thread;
+    private volatile boolean running = true;
+    private long missingVersion = -1;
+    private long missingSince;
+
+    /**
+     * Creates a leader with the default backlog and batch sizes and starts listening.
+     *
+     * @see #MapReplicationLeader(ObservableMap, Codec, Codec, InetSocketAddress, int, int)
+     */
+    public MapReplicationLeader(ObservableMap<K, V> map, Codec<K> keyCodec, Codec<V> valueCodec, InetSocketAddress bindAddress) throws IOException {
+        this(map, keyCodec, valueCodec, bindAddress, DEFAULT_BACKLOG_SIZE, DEFAULT_MAX_BATCH);
+    }
+
+    /**
+     * Creates a leader and starts listening for followers.
+     *
+     * @param map         the map to replicate
+     * @param keyCodec    the codec for keys
+     * @param valueCodec  the codec for values
+     * @param bindAddress the address to listen on, port 0 picks a free port
+     * @param backlogSize the number of recent changes kept for reconnecting followers
+     * @param maxBatch    the maximum number of changes or snapshot entries per frame
+     *
+     * @throws IOException if the server socket cannot be opened
+     */
+    public MapReplicationLeader(ObservableMap<K, V> map, Codec<K> keyCodec, Codec<V> valueCodec, InetSocketAddress bindAddress,
+                                int backlogSize, int maxBatch) throws IOException {
+        if (backlogSize <= 0 || maxBatch <= 0) {
+            throw new IllegalArgumentException("Backlog size and batch size must be greater than 0");
+        }
+        this.map = map;
+        this.keyCodec = keyCodec;
+        this.valueCodec = valueCodec;
+        this.backlogSize = backlogSize;
+        this.maxBatch = maxBatch;
+
+        this.selector = Selector.open();
+        this.server = ServerSocketChannel.open();
+        server.bind(bindAddress);
+        server.configureBlocking(false);
+        server.register(selector, SelectionKey.OP_ACCEPT);
+
+        map.setTransactionCoalescing(false);
+        this.listener = map.onChangeDef(this::record, true);
+        trimmedThrough.set(map.version());
+
+        this.thread = new Thread(this::run, getClass().getSimpleName() + "-" + server.socket().getLocalPort());
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Returns the address the leader is listening on.
+     *
+     * @return the local address
+     */
+    public InetSocketAddress getLocalAddress() {
+        return (InetSocketAddress) server.socket().getLocalSocketAddress();
+    }
+
+    /**
+     * Returns the number of currently connected followers.
+     *
+     * @return the follower count
+     */
+    public int getFollowerCount() {
+        synchronized (sessions) {
+            return sessions.size();
+        }
+    }
+
+    private static long newRunId() {
+        long id;
+        do {
+            id = ThreadLocalRandom.current().nextLong();
+        } while (id == 0);
+        return id;
+    }
+
+    private void record(ObservableMapChangeDef<MapTypes<K, V>, K, V> changeDef) {
+        backlog.put(changeDef.version(), changeDef);
+        if (backlogCount.incrementAndGet() > backlogSize) {
+            Map.Entry<Long, ObservableMapChangeDef<MapTypes<K, V>, K, V>> oldest = backlog.pollFirstEntry();
+            if (oldest != null) {
+                backlogCount.decrementAndGet();
+                trimmedThrough.accumulateAndGet(oldest.getKey(), Math::max);
+            }
+        }
+        if (wakeupPending.compareAndSet(false, true)) selector.wakeup();
+    }
+
+    private void run() {
+        while (running) {
+            try {
+                selector.select(100);
+                wakeupPending.set(false);
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) continue;
+                    if (key.isAcceptable()) accept();
+                    else handle(sessionOf(key), key);
+                }
+                List<Session> current;
+                synchronized (sessions) {
+                    current = new ArrayList<>(sessions);
+                }
+                for (Session session : current) {
+                    pump(session);
+                }
+            } catch (IOException e) {
+                if (running) System.err.println("Replication leader error: " + e);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked") // Only sessions are attached to follower keys
+    private Session sessionOf(SelectionKey key) {
+        return (Session) key.attachment();
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = server.accept();
+        if (channel == null) return;
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        Session session = new Session(channel);
+        session.key = channel.register(selector, SelectionKey.OP_READ, session);
+        synchronized (sessions) {
+            sessions.add(session);
+        }
+    }
+
+    private void handle(Session session, SelectionKey key) {
+        try {
+            if (key.isReadable()) {
+                if (session.channel.read(session.inbound) < 0) {
+                    drop(session);
+                    return;
+                }
+                readHello(session);
+            }
+            if (key.isValid() && key.isWritable()) pump(session);
+        } catch (IOException e) {
+            drop(session);
+        }
+    }
+
+    private void readHello(Session session) throws IOException {
+        ByteBuffer in = session.inbound;
+        in.flip();
+        while (in.remaining() >= 4 + Protocol.HELLO_LENGTH) {
+            int length = in.getInt();
+            byte type = in.get();
+            long followerRunId = in.getLong();
+            long lastVersion = in.getLong();
+            if (length != Protocol.HELLO_LENGTH || type != Protocol.HELLO) {
+                throw new IOException("Unexpected frame from follower");
+            }
+            session.pending.clear();
+            session.snapshot = null;
+            if (followerRunId != runId || lastVersion < 0 || lastVersion > map.version() || trimmedThrough.get() > lastVersion) {
+                startSnapshot(session);
+            } else {
+                session.cursor = lastVersion;
+            }
+            session.streaming = true;
+        }
+        in.compact();
+    }
+
+    private void startSnapshot(Session session) {
+        MapSnapshot<K, V> snapshot = map.snapshot();
+        DataOutputStream out = frame.begin(Protocol.SNAPSHOT_BEGIN);
+        try {
+            out.writeLong(runId);
+            out.writeLong(snapshot.version());
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        session.pending.add(frame.finish());
+        session.snapshot = snapshot.entrySet().iterator();
+        session.cursor = snapshot.version();
+    }
+
+    /**
+     * Writes as much as possible to a follower, producing new frames only once the previous ones
+     * have been written completely.
+     */
+    private void pump(Session session) {
+        if (!session.streaming || !session.channel.isOpen()) return;
+        try {
+            while (true) {
+                ByteBuffer head = session.pending.peek();
+                if (head == null) {
+                    head = nextFrame(session);
+                    if (head == null) break;
+                    session.pending.add(head);
+                }
+                session.channel.write(head);
+                if (head.hasRemaining()) break;
+                session.pending.poll();
+            }
+            session.key.interestOps(session.pending.isEmpty() ? SelectionKey.OP_READ : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        } catch (IOException e) {
+            drop(session);
+        }
+    }
+
+    private ByteBuffer nextFrame(Session session) throws IOException {
+        if (session.snapshot != null) {
+            if (!session.snapshot.hasNext()) {
+                session.snapshot = null;
+                frame.begin(Protocol.SNAPSHOT_END);
+                return frame.finish();
+            }
+            DataOutputStream out = frame.begin(Protocol.SNAPSHOT_CHUNK);
+            List<Map.Entry<K, V>> chunk = new ArrayList<>(maxBatch);
+            while (chunk.size() < maxBatch && session.snapshot.hasNext()) {
+                chunk.add(session.snapshot.next());
+            }
+            out.writeInt(chunk.size());
+            for (Map.Entry<K, V> entry : chunk) {
+                keyCodec.write(out, entry.getKey());
+                valueCodec.write(out, entry.getValue());
+            }
+            return frame.finish();
+        }
+
+        if (trimmedThrough.get() > session.cursor) {
+            // The follower fell behind the backlog, start over from a fresh snapshot
+            startSnapshot(session);
+            return session.pending.poll();
+        }
+        long first = session.cursor + 1;
+        ObservableMapChangeDef<MapTypes<K, V>, K, V> change = backlog.get(first);
+        if (change == null) {
+            if (!isLost(first)) return null;
+            // Followers can only get past the lost version through a snapshot that contains it
+            trimmedThrough.accumulateAndGet(first, Math::max);
+            startSnapshot(session);
+            return session.pending.poll();
+        }
+
+        DataOutputStream out = frame.begin(Protocol.BATCH);
+        out.writeLong(first);
+        int countPosition = frame.size();
+        out.writeInt(0);
+        int count = 0;
+        while (change != null && count < maxBatch) {
+            out.writeByte(change.mapChangeType().ordinal());
+            if (change.mapChangeType() != MapChangeType.CLEAR) keyCodec.write(out, change.key());
+            if (change.mapChangeType() == MapChangeType.PUT) valueCodec.write(out, change.newValue());
+            count++;
+            change = backlog.get(first + count);
+        }
+        ByteBuffer batch = frame.finish();
+        batch.putInt(countPosition, count);
+        session.cursor = first + count - 1;
+        return batch;
+    }
+
+    /**
+     * Returns whether a version missing from the backlog will never be recorded. Versions the map has
+     * reached are normally recorded right after their mutation; one that stays missing for
+     * {@link #LOST_VERSION_TIMEOUT} is considered lost.
+     */
+    private boolean isLost(long version) {
+        if (version > map.version()) return false;
+        long now = System.nanoTime();
+        if (missingVersion != version) {
+            missingVersion = version;
+            missingSince = now;
+            return false;
+        }
+        return now - missingSince > LOST_VERSION_TIMEOUT.toNanos();
+    }
+
+    private void drop(Session session) {
+        synchronized (sessions) {
+            sessions.remove(session);
+        }
+        session.key.cancel();
+        try {
+            session.channel.close();
+        } catch (IOException ignored) {
+            // Already closing
+        }
+    }
+
+    /**
+     * Stops replicating, disconnects all followers and unregisters from the map.
+     */
+    @Override
+    public void close() throws IOException {
+        running = false;
+        listener.close();
+        selector.wakeup();
+        try {
+            thread.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (sessions) {
+            for (Session session : sessions) {
+                session.channel.close();
+            }
+            sessions.clear();
+        }
+        server.close();
+        selector.close();
+    }
+
+    private final class Session {
+        final SocketChannel channel;
+        final ByteBuffer inbound = ByteBuffer.allocate(256);
+        final ArrayDeque<ByteBuffer> pending = new ArrayDeque<>();
+        SelectionKey key;
+        Iterator<Map.Entry<K, V>> snapshot;
+        long cursor;
+        boolean streaming;
+
+        Session(SocketChannel channel) {
+            this.channel = channel;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package de.kiliansen.lib.ObservableValue.replication;
+
+import de.kiliansen.lib.ObservableValue.map.MapChangeType;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Wire format shared by leader and follower. Every frame is a big-endian {@code int} payload length
+ * followed by a one byte frame type and the payload:
+ * <pre>
+ * HELLO          long runId (0 if none), long lastAppliedVersion  follower -> leader
+ * SNAPSHOT_BEGIN long runId, long version                         leader -> follower
+ * SNAPSHOT_CHUNK int count, count * (key, value)                  leader -> follower
+ * SNAPSHOT_END   (empty)                                          leader -> follower
+ * BATCH          long firstVersion, int count, count * change     leader -> follower
+ * </pre>
+ * A change is a {@link MapChangeType} ordinal followed by the key for {@code PUT} and {@code REMOVE}
+ * and the value for {@code PUT}. Versions inside a batch are consecutive.
+ * <p>
+ * Every leader instance picks a random, non-zero run id. Map versions are only meaningful within one
+ * run, so a follower reports the run its version belongs to, and the leader ignores versions of
+ * other runs.
+ */
+final class Protocol {
+    static final byte HELLO = 1;
+    static final byte SNAPSHOT_BEGIN = 2;
+    static final byte SNAPSHOT_CHUNK = 3;
+    static final byte SNAPSHOT_END = 4;
+    static final byte BATCH = 5;
+
+    static final int HELLO_LENGTH = 1 + 8 + 8;
+
+    static final MapChangeType[] CHANGE_TYPES = MapChangeType.values();
+
+    private Protocol() {
+    }
+
+    /**
+     * Reusable frame encoder. The length prefix is patched in when the frame is finished.
+     */
+    static final class FrameWriter extends ByteArrayOutputStream {
+        final DataOutputStream data = new DataOutputStream(this);
+
+        FrameWriter() {
+            super(8192);
+        }
+
+        DataOutputStream begin(byte type) {
+            reset();
+            write(0);
+            write(0);
+            write(0);
+            write(0);
+            write(type);
+            return data;
+        }
+
+        ByteBuffer finish() {
+            int length = count - 4;
+            buf[0] = (byte) (length >>> 24);
+            buf[1] = (byte) (length >>> 16);
+            buf[2] = (byte) (length >>> 8);
+            buf[3] = (byte) length;
+            return ByteBuffer.wrap(toByteArray());
+        }
+    }
+}
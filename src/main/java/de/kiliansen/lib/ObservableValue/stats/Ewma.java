@@ -0,0 +1,105 @@
+package de.kiliansen.lib.ObservableValue.stats;
+
+import de.kiliansen.lib.ObservableValue.base.ThreadedListener;
+import de.kiliansen.lib.ObservableValue.value.ObservableValue;
+
+import java.time.Duration;
+import java.util.function.LongSupplier;
+
+/**
+ * An exponentially weighted moving average of a numeric {@link ObservableValue}, exposed as an
+ * observable.
+ * <p>
+ * The weight of a sample decays with time rather than with the number of samples: after one
+ * {@code halfLife} it counts half as much as a new sample. Irregular sample rates therefore do not
+ * skew the average. Samples within the same clock tick are averaged first and enter with the weight
+ * of the time since the previous tick, so a burst that the clock cannot tell apart still moves the
+ * average. Time is taken from a pluggable nanosecond clock.
+ * <p>
+ * Every change of the source is one sample, so a value set again unchanged is only recorded if the
+ * source is set with {@code forceNotify}.
+ */
+public final class Ewma implements AutoCloseable {
+    private final double decayPerNano;
+    private final LongSupplier clock;
+    private final ThreadedListener<?, ?> subscription;
+    private final ObservableValue<Double> average = new ObservableValue<>(Double.NaN);
+
+    private double current = Double.NaN;
+    private long lastSample;
+    // The average before the samples of the current tick, NaN during the first tick
+    private double beforeTick = Double.NaN;
+    private double tickWeight;
+    private double tickSum;
+    private int tickCount;
+
+    /**
+     * Starts averaging a source using {@link System#nanoTime()}.
+     *
+     * @param source   the numeric source
+     * @param halfLife the age at which a sample's weight has halved
+     */
+    public Ewma(ObservableValue<? extends Number> source, Duration halfLife) {
+        this(source, halfLife, System::nanoTime);
+    }
+
+    /**
+     * Starts averaging a source.
+     *
+     * @param source   the numeric source
+     * @param halfLife the age at which a sample's weight has halved
+     * @param clock    the nanosecond clock
+     */
+    public Ewma(ObservableValue<? extends Number> source, Duration halfLife, LongSupplier clock) {
+        if (source == null || clock == null) {
+            throw new IllegalArgumentException("Source and clock cannot be null");
+        }
+        if (halfLife.isNegative() || halfLife.isZero()) {
+            throw new IllegalArgumentException("Half-life must be positive");
+        }
+        this.decayPerNano = Math.log(2) / halfLife.toNanos();
+        this.clock = clock;
+        this.subscription = source.onChange((oldValue, newValue) -> {
+            if (newValue != null) add(newValue.doubleValue());
+        }, true);
+    }
+
+    /**
+     * Records a sample. Called for every change of the source; may also be called directly.
+     *
+     * @param value the sample
+     */
+    public synchronized void add(double value) {
+        long now = clock.getAsLong();
+        if (tickCount == 0 || now > lastSample) {
+            // A new tick; a clock running backwards is treated like the same tick
+            if (tickCount != 0) {
+                beforeTick = current;
+                tickWeight = -Math.expm1(-decayPerNano * (now - lastSample));
+            }
+            tickSum = 0;
+            tickCount = 0;
+            lastSample = now;
+        }
+        tickSum += value;
+        tickCount++;
+        double tickMean = tickSum / tickCount;
+        current = Double.isNaN(beforeTick) ? tickMean : beforeTick + tickWeight * (tickMean - beforeTick);
+        average.set(current);
+    }
+
+    /**
+     * The current average, NaN until the first sample.
+     */
+    public ObservableValue<Double> average() {
+        return average;
+    }
+
+    /**
+     * Stops listening to the source. The average keeps its last value.
+     */
+    @Override
+    public void close() {
+        subscription.close();
+    }
+}
@@ -0,0 +1,118 @@
+package de.kiliansen.lib.ObservableValue.stats;
+
+import java.util.Arrays;
+
+/**
+ * A histogram with HDR-style log-linear buckets that supports removing samples again.
+ * <p>
+ * Every power of two between {@code 2^MIN_EXPONENT} and {@code 2^MAX_EXPONENT} is split into
+ * {@code 2^precisionBits} equally wide buckets, for positive and negative values alike, so a
+ * reported quantile is within a relative error of {@code 2^-precisionBits} of a recorded sample.
+ * Smaller magnitudes count as zero, larger ones are clamped. Each tracked quantile keeps a cursor
+ * on its bucket that is moved by the few buckets a single sample can shift it, so updating a
+ * quantile does not rescan the histogram.
+ */
+final class LogLinearHistogram {
+    private static final int MIN_EXPONENT = -64;
+    private static final int MAX_EXPONENT = 64;
+
+    private final int precisionBits;
+    private final int bucketsPerSign;
+    private final int zero;
+    private final long[] counts;
+    private final double[] quantiles;
+    private final int[] cursors;
+    private final long[] below;
+    private long total;
+
+    LogLinearHistogram(int precisionBits, double[] quantiles) {
+        if (precisionBits < 1 || precisionBits > 10) {
+            throw new IllegalArgumentException("Precision must be between 1 and 10 bits");
+        }
+        for (double quantile : quantiles) {
+            if (!(quantile >= 0 && quantile <= 1)) {
+                throw new IllegalArgumentException("Quantiles must be between 0 and 1");
+            }
+        }
+        this.precisionBits = precisionBits;
+        this.bucketsPerSign = (MAX_EXPONENT - MIN_EXPONENT + 1) << precisionBits;
+        this.zero = bucketsPerSign;
+        this.counts = new long[2 * bucketsPerSign + 1];
+        this.quantiles = quantiles.clone();
+        this.cursors = new int[quantiles.length];
+        this.below = new long[quantiles.length];
+        Arrays.fill(cursors, zero);
+    }
+
+    void add(double value) {
+        update(index(value), 1);
+    }
+
+    void remove(double value) {
+        update(index(value), -1);
+    }
+
+    /**
+     * Returns the current estimate of the i-th tracked quantile, or NaN if the histogram is empty.
+     */
+    double quantile(int i) {
+        return total == 0 ? Double.NaN : value(cursors[i]);
+    }
+
+    private void update(int bucket, long delta) {
+        counts[bucket] += delta;
+        total += delta;
+        for (int i = 0; i < cursors.length; i++) {
+            if (bucket < cursors[i]) below[i] += delta;
+            if (total > 0) seek(i);
+        }
+    }
+
+    /**
+     * Moves a cursor to the bucket holding the sample of rank {@code ceil(q * total)}.
+     */
+    private void seek(int i) {
+        long rank = Math.max(1, (long) Math.ceil(quantiles[i] * total));
+        int cursor = cursors[i];
+        long countBelow = below[i];
+        while (countBelow >= rank) {
+            cursor--;
+            countBelow -= counts[cursor];
+        }
+        while (countBelow + counts[cursor] < rank) {
+            countBelow += counts[cursor];
+            cursor++;
+        }
+        cursors[i] = cursor;
+        below[i] = countBelow;
+    }
+
+    private int index(double value) {
+        if (Double.isNaN(value)) {
+            throw new IllegalArgumentException("Samples must not be NaN");
+        }
+        int offset = magnitudeIndex(Math.abs(value));
+        if (offset < 0) return zero;
+        return value > 0 ? zero + 1 + offset : zero - 1 - offset;
+    }
+
+    private int magnitudeIndex(double magnitude) {
+        int exponent = Math.getExponent(magnitude);
+        if (exponent < MIN_EXPONENT) return -1;
+        if (exponent > MAX_EXPONENT) return bucketsPerSign - 1;
+        int mantissa = (int) ((Double.doubleToRawLongBits(magnitude) >>> (52 - precisionBits)) & ((1 << precisionBits) - 1));
+        return ((exponent - MIN_EXPONENT) << precisionBits) | mantissa;
+    }
+
+    /**
+     * Returns the midpoint of a bucket.
+     */
+    private double value(int bucket) {
+        if (bucket == zero) return 0;
+        int offset = bucket > zero ? bucket - zero - 1 : zero - 1 - bucket;
+        int exponent = (offset >> precisionBits) + MIN_EXPONENT;
+        double mantissa = 1 + ((offset & ((1 << precisionBits) - 1)) + 0.5) / (1 << precisionBits);
+        double magnitude = Math.scalb(mantissa, exponent);
+        return bucket > zero ? magnitude : -magnitude;
+    }
+}
@@ -0,0 +1,65 @@
+package de.kiliansen.lib.ObservableValue.stats;
+
+import java.util.function.DoubleConsumer;
+
+/**
+ * A ring buffer of timestamped samples bounded by a maximum count and, optionally, a maximum age.
+ * Samples are kept in two primitive arrays, so adding and evicting never allocates.
+ */
+final class SampleWindow {
+    private final double[] values;
+    private final long[] times;
+    private final long maxAgeNanos;
+    private int head;
+    private int size;
+
+    /**
+     * @param capacity    the maximum number of samples
+     * @param maxAgeNanos the maximum sample age, or 0 to bound by count only
+     */
+    SampleWindow(int capacity, long maxAgeNanos) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be greater than 0");
+        }
+        this.values = new double[capacity];
+        this.times = new long[capacity];
+        this.maxAgeNanos = maxAgeNanos;
+    }
+
+    /**
+     * Appends a sample, evicting the oldest one first if the window is full.
+     */
+    void add(double value, long now, DoubleConsumer evicted) {
+        if (size == values.length) evictOldest(evicted);
+        int tail = (head + size) % values.length;
+        values[tail] = value;
+        times[tail] = now;
+        size++;
+    }
+
+    /**
+     * Evicts all samples older than the maximum age.
+     *
+     * @return whether a sample was evicted
+     */
+    boolean expire(long now, DoubleConsumer evicted) {
+        if (maxAgeNanos == 0) return false;
+        boolean expired = false;
+        while (size > 0 && now - times[head] > maxAgeNanos) {
+            evictOldest(evicted);
+            expired = true;
+        }
+        return expired;
+    }
+
+    private void evictOldest(DoubleConsumer evicted) {
+        double value = values[head];
+        head = (head + 1) % values.length;
+        size--;
+        evicted.accept(value);
+    }
+
+    int size() {
+        return size;
+    }
+}
@@ -0,0 +1,58 @@
+package de.kiliansen.lib.ObservableValue.stats;
+
+import java.time.Duration;
+import java.util.function.LongSupplier;
+
+/**
+ * The window of a {@link WindowedStatistics}: the most recent {@code capacity} samples, further
+ * limited to samples at most {@code length} old unless {@code length} is null.
+ *
+ * @param capacity the maximum number of samples
+ * @param length   the maximum sample age, or null for a pure count window
+ * @param clock    the nanosecond clock samples are timestamped with
+ */
+public record StatisticsWindow(int capacity, Duration length, LongSupplier clock) {
+    public StatisticsWindow {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be greater than 0");
+        }
+        if (length != null && (length.isNegative() || length.isZero())) {
+            throw new IllegalArgumentException("Window length must be positive");
+        }
+        if (clock == null) {
+            throw new IllegalArgumentException("Clock cannot be null");
+        }
+    }
+
+    /**
+     * Creates a window over the last {@code size} samples.
+     *
+     * @param size the number of samples
+     */
+    public StatisticsWindow(int size) {
+        this(size, null, System::nanoTime);
+    }
+
+    /**
+     * Creates a window over the samples of the last {@code length}, keeping at most
+     * {@code capacity} of them.
+     *
+     * @param length   the maximum sample age
+     * @param capacity the maximum number of samples, older ones are dropped early beyond it
+     */
+    public StatisticsWindow(Duration length, int capacity) {
+        this(capacity, length, System::nanoTime);
+    }
+
+    /**
+     * Returns the same window timestamping samples with another clock, e.g. a manually advanced
+     * one in tests.
+     *
+     * @param clock the nanosecond clock
+     *
+     * @return the window using the clock
+     */
+    public StatisticsWindow withClock(LongSupplier clock) {
+        return new StatisticsWindow(capacity, length, clock);
+    }
+}
@@ -0,0 +1,175 @@
+package de.kiliansen.lib.ObservableValue.stats;
+
+import de.kiliansen.lib.ObservableValue.base.ThreadedListener;
+import de.kiliansen.lib.ObservableValue.value.ObservableValue;
+
+import java.util.function.DoubleConsumer;
+import java.util.function.LongSupplier;
+
+/**
+ * Count, sum, mean, variance and quantiles of the most recent values of a numeric
+ * {@link ObservableValue}, each exposed as an observable of its own.
+ * <p>
+ * Every change of the source is one sample. Samples are kept in a primitive ring buffer, bounded by
+ * count or by age, and the statistics are updated incrementally as samples enter and leave the
+ * window: mean and variance with Welford's method, quantiles with a log-linear histogram.
+ * <p>
+ * An {@code ObservableValue} does not notify when it is set to the value it already holds, so a
+ * sample equal to the previous one is not recorded and count, mean and quantiles are skewed towards
+ * values that change. Sources that can repeat a value, e.g. latencies in whole milliseconds, have to
+ * be set with {@code forceNotify}, or the samples passed to {@link #add(double)} directly.
+ * <p>
+ * Time windows are evaluated against the window's nanosecond clock. Samples also expire when no new
+ * sample arrives if {@link #refresh()} is called, e.g. from a timer.
+ *
+ * <pre>{@code
+ * WindowedStatistics latency = new WindowedStatistics(feed, new StatisticsWindow(Duration.ofSeconds(10), 100_000), 0.5, 0.99);
+ * latency.quantile(1).onChange(p99 -> System.out.println("10s p99: " + p99));
+ * }</pre>
+ */
+public final class WindowedStatistics implements AutoCloseable {
+    /**
+     * Quantiles are accurate to a relative error of {@code 2^-7}, i.e. below 1%.
+     */
+    private static final int QUANTILE_PRECISION_BITS = 7;
+
+    private final SampleWindow window;
+    private final LogLinearHistogram histogram;
+    private final LongSupplier clock;
+    private final DoubleConsumer evictor = this::evict;
+    private final ThreadedListener<?, ?> subscription;
+
+    private final ObservableValue<Long> count = new ObservableValue<>(0L);
+    private final ObservableValue<Double> sum = new ObservableValue<>(0.0);
+    private final ObservableValue<Double> mean = new ObservableValue<>(Double.NaN);
+    private final ObservableValue<Double> variance = new ObservableValue<>(Double.NaN);
+    private final ObservableValue<Double>[] quantiles;
+
+    private double currentSum;
+    private double currentMean;
+    private double squaredDeviations;
+
+    /**
+     * Starts maintaining statistics over a source.
+     *
+     * @param source    the numeric source
+     * @param window    the window of samples the statistics cover
+     * @param quantiles the quantiles to track, e.g. {@code 0.5, 0.99}
+     */
+    public WindowedStatistics(ObservableValue<? extends Number> source, StatisticsWindow window, double... quantiles) {
+        if (source == null || window == null) {
+            throw new IllegalArgumentException("Source and window cannot be null");
+        }
+        this.window = new SampleWindow(window.capacity(), window.length() == null ? 0 : window.length().toNanos());
+        this.histogram = quantiles.length == 0 ? null : new LogLinearHistogram(QUANTILE_PRECISION_BITS, quantiles);
+        this.clock = window.clock();
+        this.quantiles = newQuantiles(quantiles.length);
+        for (int i = 0; i < quantiles.length; i++) {
+            this.quantiles[i] = new ObservableValue<>(Double.NaN);
+        }
+        this.subscription = source.onChange((oldValue, newValue) -> {
+            if (newValue != null) add(newValue.doubleValue());
+        }, true);
+    }
+
+    @SuppressWarnings("unchecked") // Generic arrays cannot be created; every element is an ObservableValue<Double>
+    private static ObservableValue<Double>[] newQuantiles(int length) {
+        return (ObservableValue<Double>[]) new ObservableValue<?>[length];
+    }
+
+    /**
+     * Records a sample. Called for every change of the source; may also be called directly.
+     *
+     * @param value the sample
+     */
+    public synchronized void add(double value) {
+        long now = clock.getAsLong();
+        window.expire(now, evictor);
+        window.add(value, now, evictor);
+        if (histogram != null) histogram.add(value);
+
+        currentSum += value;
+        double delta = value - currentMean;
+        currentMean += delta / window.size();
+        squaredDeviations += delta * (value - currentMean);
+        publish();
+    }
+
+    /**
+     * Evicts samples that have become too old since the last sample and updates the statistics.
+     */
+    public synchronized void refresh() {
+        if (window.expire(clock.getAsLong(), evictor)) publish();
+    }
+
+    private void evict(double value) {
+        if (histogram != null) histogram.remove(value);
+        int remaining = window.size();
+        currentSum -= value;
+        if (remaining == 0) {
+            currentSum = 0;
+            currentMean = 0;
+            squaredDeviations = 0;
+            return;
+        }
+        double delta = value - currentMean;
+        currentMean -= delta / remaining;
+        squaredDeviations = Math.max(0, squaredDeviations - delta * (value - currentMean));
+    }
+
+    private void publish() {
+        int n = window.size();
+        count.set((long) n);
+        sum.set(currentSum);
+        mean.set(n == 0 ? Double.NaN : currentMean);
+        variance.set(n < 2 ? Double.NaN : squaredDeviations / (n - 1));
+        for (int i = 0; i < quantiles.length; i++) {
+            quantiles[i].set(histogram.quantile(i));
+        }
+    }
+
+    /**
+     * The number of samples in the window.
+     */
+    public ObservableValue<Long> count() {
+        return count;
+    }
+
+    /**
+     * The sum of the samples in the window.
+     */
+    public ObservableValue<Double> sum() {
+        return sum;
+    }
+
+    /**
+     * The mean of the samples in the window, NaN while it is empty.
+     */
+    public ObservableValue<Double> mean() {
+        return mean;
+    }
+
+    /**
+     * The sample variance of the window, NaN while it holds fewer than two samples.
+     */
+    public ObservableValue<Double> variance() {
+        return variance;
+    }
+
+    /**
+     * The estimate of the i-th quantile passed to the constructor, NaN while the window is empty.
+     *
+     * @param i the position of the quantile
+     */
+    public ObservableValue<Double> quantile(int i) {
+        return quantiles[i];
+    }
+
+    /**
+     * Stops listening to the source. The outputs keep their last values.
+     */
+    @Override
+    public void close() {
+        subscription.close();
+    }
+}
@@ -0,0 +1,235 @@
+package de.kiliansen.lib.ObservableValue.value;
+
+import de.kiliansen.lib.ObservableValue.list.ObservableListChangeDef;
+import de.kiliansen.lib.ObservableValue.list.ObservableListChangeDef.ListChangeType;
+import de.kiliansen.lib.ObservableValue.map.MapChangeType;
+import de.kiliansen.lib.ObservableValue.map.MapTypes;
+import de.kiliansen.lib.ObservableValue.map.ObservableMapChangeDef;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Stream;
+
+/**
+ * Computes edit scripts between two versions of a collection, expressed with the same change
+ * definitions that {@link de.kiliansen.lib.ObservableValue.list.ObservableList} and
+ * {@link de.kiliansen.lib.ObservableValue.map.ObservableMap} emit.
+ */
+public final class CollectionDiff {
+    /**
+     * The default maximum number of insertions and deletions searched for before a list diff
+     * falls back to a {@code CLEAR} followed by {@code ADD}s of the new contents.
+     */
+    public static final int DEFAULT_MAX_EDITS = 1024;
+
+    /**
+     * List diffs hash the elements of inputs with at least this many elements in parallel, map diffs
+     * compare their entries in parallel. The Myers search of a list diff is always sequential, since
+     * each step extends the paths of the previous one.
+     */
+    public static final int PARALLEL_THRESHOLD = 1 << 14;
+
+    private CollectionDiff() {
+    }
+
+    /**
+     * Computes a minimal edit script from {@code oldList} to {@code newList} using {@link #DEFAULT_MAX_EDITS}.
+     *
+     * @see #diff(List, List, int)
+     */
+    public static <E> List<ObservableListChangeDef<E>> diff(List<E> oldList, List<E> newList) {
+        return diff(oldList, newList, DEFAULT_MAX_EDITS);
+    }
+
+    /**
+     * Computes a minimal edit script from {@code oldList} to {@code newList} with the Myers
+     * algorithm. Applying the returned changes in order to {@code oldList} yields {@code newList};
+     * indices refer to the list as it is after all preceding changes. A deletion directly followed
+     * by an insertion at the same position is reported as an {@code UPDATE}.
+     * <p>
+     * If more than {@code maxEdits} insertions and deletions are needed, the script is a single
+     * {@code CLEAR} followed by an {@code ADD} for every element of {@code newList}.
+     * <p>
+     * Above {@link #PARALLEL_THRESHOLD} elements only the hashing of the elements runs in parallel;
+     * the search itself stays on the calling thread.
+     *
+     * @param oldList  the previous list, null is treated as empty
+     * @param newList  the current list, null is treated as empty
+     * @param maxEdits the maximum edit distance to search for
+     *
+     * @return the edit script
+     */
+    public static <E> List<ObservableListChangeDef<E>> diff(List<E> oldList, List<E> newList, int maxEdits) {
+        List<E> a = oldList == null ? List.of() : oldList;
+        List<E> b = newList == null ? List.of() : newList;
+
+        int prefix = 0;
+        int maxPrefix = Math.min(a.size(), b.size());
+        while (prefix < maxPrefix && Objects.equals(a.get(prefix), b.get(prefix))) prefix++;
+        int suffix = 0;
+        while (suffix < maxPrefix - prefix && Objects.equals(a.get(a.size() - 1 - suffix), b.get(b.size() - 1 - suffix))) suffix++;
+
+        List<E> x = a.subList(prefix, a.size() - suffix);
+        List<E> y = b.subList(prefix, b.size() - suffix);
+        if (x.isEmpty() && y.isEmpty()) return List.of();
+
+        byte[] script = x.isEmpty() || y.isEmpty() ? trivialScript(x.size(), y.size()) : myers(x, y, maxEdits);
+        if (script == null) return replaceAll(b);
+        return toChanges(script, x, y, prefix);
+    }
+
+    /**
+     * Computes the key-wise difference between two maps. Added and changed keys are reported as
+     * {@code PUT}, missing keys as {@code REMOVE}. Maps of at least {@link #PARALLEL_THRESHOLD}
+     * entries are compared in parallel.
+     *
+     * @param oldMap the previous map, null is treated as empty
+     * @param newMap the current map, null is treated as empty
+     *
+     * @return the changes, in no particular order
+     */
+    public static <K, V> List<ObservableMapChangeDef<MapTypes<K, V>, K, V>> diff(Map<K, V> oldMap, Map<K, V> newMap) {
+        Map<K, V> a = oldMap == null ? Map.of() : oldMap;
+        Map<K, V> b = newMap == null ? Map.of() : newMap;
+        boolean parallel = a.size() + b.size() >= PARALLEL_THRESHOLD;
+
+        Stream<ObservableMapChangeDef<MapTypes<K, V>, K, V>> puts = stream(b.entrySet().stream(), parallel)
+                .filter(e -> !Objects.equals(a.get(e.getKey()), e.getValue()) || !a.containsKey(e.getKey()))
+                .map(e -> new ObservableMapChangeDef<>(e.getKey(), a.get(e.getKey()), e.getValue(), MapChangeType.PUT));
+        Stream<ObservableMapChangeDef<MapTypes<K, V>, K, V>> removes = stream(a.entrySet().stream(), parallel)
+                .filter(e -> !b.containsKey(e.getKey()))
+                .map(e -> new ObservableMapChangeDef<>(e.getKey(), e.getValue(), null, MapChangeType.REMOVE));
+        return Stream.concat(removes, puts).toList();
+    }
+
+    private static <S> Stream<S> stream(Stream<S> stream, boolean parallel) {
+        return parallel ? stream.parallel() : stream;
+    }
+
+    private static final byte KEEP = 0;
+    private static final byte DELETE = 1;
+    private static final byte INSERT = 2;
+
+    private static byte[] trivialScript(int deletes, int inserts) {
+        byte[] script = new byte[deletes + inserts];
+        Arrays.fill(script, 0, deletes, DELETE);
+        Arrays.fill(script, deletes, script.length, INSERT);
+        return script;
+    }
+
+    /**
+     * Runs the Myers O((N+M)D) algorithm on element hashes, confirming hash matches with equals.
+     *
+     * @return the edit script as KEEP/DELETE/INSERT operations, or null if it exceeds maxEdits
+     */
+    private static <E> byte[] myers(List<E> a, List<E> b, int maxEdits) {
+        int n = a.size();
+        int m = b.size();
+        int[] ha = hashes(a);
+        int[] hb = hashes(b);
+        int max = Math.min(n + m, Math.max(0, maxEdits));
+        int offset = max + 1;
+        int[] v = new int[2 * max + 3];
+        List<int[]> trace = new ArrayList<>();
+
+        int end = -1;
+        for (int d = 0; d <= max && end < 0; d++) {
+            // Keep the part of v that step d reads, indexed by k + d + 1
+            trace.add(Arrays.copyOfRange(v, offset - d - 1, offset + d + 2));
+            for (int k = -d; k <= d; k += 2) {
+                int x = k == -d || (k != d && v[offset + k - 1] < v[offset + k + 1])
+                        ? v[offset + k + 1]
+                        : v[offset + k - 1] + 1;
+                int y = x - k;
+                while (x < n && y < m && ha[x] == hb[y] && Objects.equals(a.get(x), b.get(y))) {
+                    x++;
+                    y++;
+                }
+                v[offset + k] = x;
+                if (x >= n && y >= m) {
+                    end = d;
+                    break;
+                }
+            }
+        }
+        if (end < 0) return null;
+
+        byte[] script = new byte[(n + m + end) / 2];
+        int pos = script.length;
+        int x = n;
+        int y = m;
+        for (int d = end; d >= 0; d--) {
+            int[] prev = trace.get(d);
+            int k = x - y;
+            int prevK = k == -d || (k != d && prev[k - 1 + d + 1] < prev[k + 1 + d + 1]) ? k + 1 : k - 1;
+            int prevX = d == 0 ? 0 : prev[prevK + d + 1];
+            int prevY = d == 0 ? 0 : prevX - prevK;
+            while (x > prevX && y > prevY) {
+                script[--pos] = KEEP;
+                x--;
+                y--;
+            }
+            if (d > 0) script[--pos] = x == prevX ? INSERT : DELETE;
+            x = prevX;
+            y = prevY;
+        }
+        return script;
+    }
+
+    private static <E> int[] hashes(List<E> list) {
+        int[] hashes = new int[list.size()];
+        if (hashes.length >= PARALLEL_THRESHOLD) {
+            Arrays.parallelSetAll(hashes, i -> Objects.hashCode(list.get(i)));
+        } else {
+            Arrays.setAll(hashes, i -> Objects.hashCode(list.get(i)));
+        }
+        return hashes;
+    }
+
+    private static <E> List<ObservableListChangeDef<E>> toChanges(byte[] script, List<E> a, List<E> b, int start) {
+        List<ObservableListChangeDef<E>> changes = new ArrayList<>();
+        int index = start;
+        int x = 0;
+        int y = 0;
+        int i = 0;
+        while (i < script.length) {
+            if (script[i] == KEEP) {
+                index++;
+                x++;
+                y++;
+                i++;
+                continue;
+            }
+            int deletes = 0;
+            int inserts = 0;
+            for (; i < script.length && script[i] != KEEP; i++) {
+                if (script[i] == DELETE) deletes++;
+                else inserts++;
+            }
+            int updates = Math.min(deletes, inserts);
+            for (int u = 0; u < updates; u++) {
+                changes.add(new ObservableListChangeDef<>(index++, a.get(x++), b.get(y++), ListChangeType.UPDATE));
+            }
+            for (int r = updates; r < deletes; r++) {
+                changes.add(new ObservableListChangeDef<>(index, a.get(x++), null, ListChangeType.REMOVE));
+            }
+            for (int r = updates; r < inserts; r++) {
+                changes.add(new ObservableListChangeDef<>(index++, null, b.get(y++), ListChangeType.ADD));
+            }
+        }
+        return Collections.unmodifiableList(changes);
+    }
+
+    private static <E> List<ObservableListChangeDef<E>> replaceAll(List<E> b) {
+        List<ObservableListChangeDef<E>> changes = new ArrayList<>(b.size() + 1);
+        changes.add(new ObservableListChangeDef<>(0, null, null, ListChangeType.CLEAR));
+        for (int i = 0; i < b.size(); i++) {
+            changes.add(new ObservableListChangeDef<>(i, null, b.get(i), ListChangeType.ADD));
+        }
+        return Collections.unmodifiableList(changes);
+    }
+}
@@ -1,7 +1,12 @@
 package de.kiliansen.lib.ObservableValue.value;
 
 import de.kiliansen.lib.ObservableValue.base.ThreadedListener;
+import de.kiliansen.lib.ObservableValue.list.ObservableListChangeDef;
+import de.kiliansen.lib.ObservableValue.map.MapTypes;
+import de.kiliansen.lib.ObservableValue.map.ObservableMapChangeDef;
 
+import java.util.List;
+import java.util.Map;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 
@@ -21,7 +26,8 @@ public interface IDifferentiable<T> extends IObservableValue<T> {
     }
 
     /**
-     * Registers a listener that will be called when the value changes.
+     * Registers a listener that will be called when the value changes to the specified value, see
+     * {@link #onChange(Runnable, Object, boolean, boolean)} for its order among the other listeners.
      *
      * @param listener the listener to register
      * @param on       the value to listen for changes to
@@ -33,7 +39,8 @@ public interface IDifferentiable<T> extends IObservableValue<T> {
     }
 
     /**
-     * Registers a listener that will be called when the value changes to the specified value.
+     * Registers a listener that will be called when the value changes to the specified value, see
+     * {@link #onChange(Runnable, Object, boolean, boolean)} for its order among the other listeners.
      *
      * @param listener      the listener to register
      * @param on            the value to listen for changes to
@@ -47,6 +54,9 @@ public interface IDifferentiable<T> extends IObservableValue<T> {
 
     /**
      * Registers a listener that will be called when the value changes to the specified value.
+     * <p>
+     * Implementations may keep such listeners apart from the others; {@code ObservableValue} notifies
+     * them after all other listeners of the same change, regardless of registration order.
      *
      * @param listener           the listener to register
      * @param on                 the value to listen for changes to
@@ -62,4 +72,36 @@ public interface IDifferentiable<T> extends IObservableValue<T> {
             }
         }, useSameThread);
     }
+
+    /**
+     * Registers a listener that receives the edit script between the old and the new list whenever
+     * a list-valued observable is set. The script is computed once per change and shared by all diff
+     * listeners, see {@link CollectionDiff#diff(List, List)}.
+     *
+     * @param listener      the listener to register
+     * @param useSameThread if true, the listener will be called in the same thread that calls set()
+     *
+     * @return an AutoCloseable that can be used to unregister the listener
+     */
+    <E> ThreadedListener<T, ObservableValueChangeDef<T>> onListDiff(Consumer<List<ObservableListChangeDef<E>>> listener, boolean useSameThread);
+
+    default <E> ThreadedListener<T, ObservableValueChangeDef<T>> onListDiff(Consumer<List<ObservableListChangeDef<E>>> listener) {
+        return onListDiff(listener, false);
+    }
+
+    /**
+     * Registers a listener that receives the key-wise changes between the old and the new map
+     * whenever a map-valued observable is set. The changes are computed once per change and shared
+     * by all diff listeners, see {@link CollectionDiff#diff(Map, Map)}.
+     *
+     * @param listener      the listener to register
+     * @param useSameThread if true, the listener will be called in the same thread that calls set()
+     *
+     * @return an AutoCloseable that can be used to unregister the listener
+     */
+    <K, V> ThreadedListener<T, ObservableValueChangeDef<T>> onMapDiff(Consumer<List<ObservableMapChangeDef<MapTypes<K, V>, K, V>>> listener, boolean useSameThread);
+
+    default <K, V> ThreadedListener<T, ObservableValueChangeDef<T>> onMapDiff(Consumer<List<ObservableMapChangeDef<MapTypes<K, V>, K, V>>> listener) {
+        return onMapDiff(listener, false);
+    }
 }
@@ -1,5 +1,8 @@
 package de.kiliansen.lib.ObservableValue.value;
 
+import java.util.function.BinaryOperator;
+import java.util.function.UnaryOperator;
+
 public interface IObservableValue<T> {
     /**
      * Sets a new value for this observable. If the new value is the same as the current value and
@@ -26,6 +29,52 @@ public interface IObservableValue<T> {
      */
     T get();
 
+    /**
+     * Atomically sets the value to {@code newValue} if the current value equals {@code expectedValue}.
+     * Values are compared with {@link java.util.Objects#equals(Object, Object)}. Listeners are notified
+     * exactly once if the value actually changed, and not at all if it already equals {@code newValue}.
+     *
+     * @param expectedValue the expected current value
+     * @param newValue      the new value
+     *
+     * @return true if the current value equaled the expected value
+     */
+    boolean compareAndSet(T expectedValue, T newValue);
+
+    /**
+     * Atomically replaces the current value with the result of applying the given function and
+     * returns the previous value. The function may be invoked several times under contention and
+     * should therefore be side-effect free. Listeners are notified exactly once per successful change.
+     *
+     * @param updateFunction the function computing the new value
+     *
+     * @return the previous value
+     */
+    T getAndUpdate(UnaryOperator<T> updateFunction);
+
+    /**
+     * Atomically replaces the current value with the result of applying the given function and
+     * returns the new value. The function may be invoked several times under contention and
+     * should therefore be side-effect free. Listeners are notified exactly once per successful change.
+     *
+     * @param updateFunction the function computing the new value
+     *
+     * @return the updated value
+     */
+    T updateAndGet(UnaryOperator<T> updateFunction);
 
+    /**
+     * Atomically replaces the current value with the result of applying the given function to the
+     * current value and {@code x}, and returns the new value. Listeners are notified exactly once per
+     * successful change.
+     *
+     * @param x                   the update value
+     * @param accumulatorFunction the function combining current value and {@code x}
+     *
+     * @return the updated value
+     */
+    default T accumulateAndGet(T x, BinaryOperator<T> accumulatorFunction) {
+        return updateAndGet(current -> accumulatorFunction.apply(current, x));
+    }
 }
 
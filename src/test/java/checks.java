@@ -0,0 +1,72 @@
+import de.kiliansen.lib.ObservableValue.base.AdaptivePlacementTest;
+import de.kiliansen.lib.ObservableValue.base.AdaptiveSizingTest;
+import de.kiliansen.lib.ObservableValue.base.BatchDeliveryTest;
+import de.kiliansen.lib.ObservableValue.base.DeliveryTrackerTest;
+import de.kiliansen.lib.ObservableValue.base.ListenerAllocationTest;
+import de.kiliansen.lib.ObservableValue.base.ThreadedListenerTest;
+import de.kiliansen.lib.ObservableValue.base.TransactionTest;
+import de.kiliansen.lib.ObservableValue.list.ObservableListTest;
+import de.kiliansen.lib.ObservableValue.map.MapSnapshotTest;
+import de.kiliansen.lib.ObservableValue.map.OffHeapLongMapTest;
+import de.kiliansen.lib.ObservableValue.map.PartitionedDispatchTest;
+import de.kiliansen.lib.ObservableValue.replication.ReplicationTest;
+import de.kiliansen.lib.ObservableValue.stats.EwmaTest;
+import de.kiliansen.lib.ObservableValue.stats.WindowedStatisticsTest;
+import de.kiliansen.lib.ObservableValue.value.AtomicUpdateTest;
+import de.kiliansen.lib.ObservableValue.value.CollectionDiffTest;
+import de.kiliansen.lib.ObservableValue.value.ValueIndexTest;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs the library's self-checking tests. Each test lives next to the code it covers, in the same
+ * package, and throws an {@link AssertionError} on the first failed check. The process exits with
+ * status 1 if any test fails, so it gates {@code mvn test} (see the exec plugin in the pom).
+ */
+public class checks {
+    private static final List<String> failures = new ArrayList<>();
+
+    public static void main(String[] args) {
+        run("direct listeners do not allocate", ListenerAllocationTest::run);
+        run("map snapshots match a HashMap", MapSnapshotTest::run);
+        run("collection diffs and diff memo", CollectionDiffTest::run);
+        run("map replication converges", ReplicationTest::run);
+        run("delivery tracking under flushes", DeliveryTrackerTest::run);
+        run("partitioned map dispatch", PartitionedDispatchTest::run);
+        run("value-targeted listeners", ValueIndexTest::run);
+        run("transactions are all-or-nothing", TransactionTest::run);
+        run("off-heap map matches a HashMap", OffHeapLongMapTest::run);
+        run("windowed statistics", WindowedStatisticsTest::run);
+        run("list delivery outside the lock", ObservableListTest::run);
+        run("batched listeners", BatchDeliveryTest::run);
+        run("listener identity and threads", ThreadedListenerTest::run);
+        run("adaptive listener placement", AdaptivePlacementTest::run);
+        run("atomic value updates", AtomicUpdateTest::run);
+        run("adaptive executor sizing", AdaptiveSizingTest::run);
+        run("time-decayed moving average", EwmaTest::run);
+
+        if (failures.isEmpty()) {
+            System.out.println("All checks passed");
+            System.exit(0);
+        }
+        System.out.println(failures.size() + " check(s) failed:");
+        failures.forEach(failure -> System.out.println("  " + failure));
+        System.exit(1);
+    }
+
+    private interface Test {
+        void run() throws Exception;
+    }
+
+    private static void run(String name, Test test) {
+        long start = System.nanoTime();
+        try {
+            test.run();
+            System.out.printf("%-36s ok in %d ms%n", name, (System.nanoTime() - start) / 1_000_000);
+        } catch (Throwable t) {
+            System.out.printf("%-36s FAILED: %s%n", name, t);
+            failures.add(name + ": " + t);
+        }
+    }
+}
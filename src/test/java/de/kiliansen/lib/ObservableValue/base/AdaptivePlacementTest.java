@@ -0,0 +1,91 @@
+package de.kiliansen.lib.ObservableValue.base;
+
+import de.kiliansen.lib.ObservableValue.value.ObservableValue;
+import de.kiliansen.lib.ObservableValue.value.ObservableValueChangeDef;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checks adaptive placement: a same-thread listener that turns slow is demoted to asynchronous
+ * delivery, one that turns fast again is promoted back to the calling thread, and its changes arrive
+ * in order across both moves, including changes made while deliveries queued before the promotion
+ * are still pending.
+ */
+public final class AdaptivePlacementTest {
+    private static final int SLOW = 12;
+    private static final int FAST = 400;
+    private static final int AFTER_PROMOTION = 5;
+
+    private AdaptivePlacementTest() {
+    }
+
+    public static void run() throws InterruptedException {
+        movesAndKeepsOrder();
+    }
+
+    private static void movesAndKeepsOrder() throws InterruptedException {
+        ObservableValue<Integer> value = new ObservableValue<>(0);
+        List<Integer> delivered = new CopyOnWriteArrayList<>();
+        List<Thread> threads = new CopyOnWriteArrayList<>();
+        List<Boolean> decisions = new CopyOnWriteArrayList<>();
+        ThreadedListener<Integer, ObservableValueChangeDef<Integer>> listener = value.onChangeDef(change -> {
+            delivered.add(change.newValue());
+            threads.add(Thread.currentThread());
+            if (change.newValue() <= SLOW) {
+                try {
+                    Thread.sleep(5);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }, true);
+        CountDownLatch promoted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        listener.enableAdaptivePlacement(new PlacementPolicy(Duration.ofNanos(200_000), Duration.ofMillis(2), 1, decision -> {
+            decisions.add(decision.useSameThread());
+            if (!decision.useSameThread()) return;
+            // Holds the asynchronous drain, so the changes made meanwhile find it still busy
+            promoted.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+
+        int next = 1;
+        while (next <= SLOW + FAST) {
+            value.set(next++);
+        }
+        check(promoted.await(5, TimeUnit.SECONDS), "the listener was not promoted, decisions " + decisions);
+        for (int i = 0; i < AFTER_PROMOTION; i++) {
+            value.set(next++);
+        }
+        release.countDown();
+        value.flush();
+        check(decisions.size() >= 2 && !decisions.get(0) && decisions.get(1), "expected a demotion, then a promotion, got " + decisions);
+        check(listener.useSameThread(), "the listener was not promoted back to the calling thread");
+
+        int total = SLOW + FAST + AFTER_PROMOTION;
+        check(delivered.size() == total, "delivered " + delivered.size() + " of " + total + " changes");
+        for (int i = 0; i < delivered.size(); i++) {
+            if (delivered.get(i) != i + 1) {
+                check(false, "change " + (i + 1) + " delivered as " + delivered.get(i));
+                break;
+            }
+        }
+        check(threads.get(0) == Thread.currentThread(), "the first change did not run in the calling thread");
+        check(threads.stream().anyMatch(thread -> thread != Thread.currentThread()), "no change ran asynchronously after the demotion");
+
+        value.set(total + 1);
+        check(threads.get(threads.size() - 1) == Thread.currentThread(), "a change after the promotion did not run in the calling thread");
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) throw new AssertionError(message);
+    }
+}
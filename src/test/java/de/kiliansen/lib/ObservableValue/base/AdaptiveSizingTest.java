@@ -0,0 +1,127 @@
+package de.kiliansen.lib.ObservableValue.base;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Checks adaptive sizing of the {@link Executor}: the controller, fed with made-up samples, grows
+ * the pool after two congested samples, shrinks it after ten idle ones, stays within the policy's
+ * bounds and starts counting again after an unremarkable sample. Resizing the pool in place while
+ * tasks are queued loses none of them.
+ */
+public final class AdaptiveSizingTest {
+    private static final AdaptivePolicy POLICY = new AdaptivePolicy(2, 10, Duration.ofMillis(100), Duration.ofMillis(1));
+    private static final long INTERVAL = Duration.ofMillis(100).toNanos();
+
+    private AdaptiveSizingTest() {
+    }
+
+    public static void run() throws InterruptedException {
+        growsWhenCongested();
+        shrinksWhenIdle();
+        resizeKeepsQueuedTasks();
+    }
+
+    /**
+     * 100 tasks that waited 5 ms each on average and kept all workers busy.
+     */
+    private static ListenerPool.Sample congested(int size) {
+        return new ListenerPool.Sample(100, 100 * 5_000_000L, INTERVAL * size, 20);
+    }
+
+    /**
+     * 10 tasks that did not wait and kept the workers busy for a tenth of the period.
+     */
+    private static ListenerPool.Sample idle(int size) {
+        return new ListenerPool.Sample(10, 10 * 1_000L, INTERVAL * size / 10, 0);
+    }
+
+    /**
+     * Tasks that waited a bit below the target, neither congested nor idle.
+     */
+    private static ListenerPool.Sample normal(int size) {
+        return new ListenerPool.Sample(100, 100 * 600_000L, INTERVAL * size * 3 / 4, 1);
+    }
+
+    private static void growsWhenCongested() {
+        Executor.AdaptiveController controller = new Executor.AdaptiveController(POLICY);
+        check(controller.nextSize(4, congested(4)) == 4, "grew after a single congested sample");
+        check(controller.nextSize(4, congested(4)) == 5, "did not grow by one after two congested samples");
+
+        check(controller.nextSize(8, congested(8)) == 8, "grew right after growing");
+        check(controller.nextSize(8, congested(8)) == 10, "did not grow by a quarter at 8 threads");
+        controller.nextSize(10, congested(10));
+        check(controller.nextSize(10, congested(10)) == 10, "grew beyond maxThreads");
+
+        controller.nextSize(4, congested(4));
+        check(controller.nextSize(4, normal(4)) == 4, "a normal sample changed the size");
+        check(controller.nextSize(4, congested(4)) == 4, "congested samples separated by a normal one made it grow");
+
+        // A sampling period in which queued tasks could not complete at all also counts as congested
+        ListenerPool.Sample stalled = new ListenerPool.Sample(0, 0, INTERVAL * 4, 3);
+        controller.nextSize(4, normal(4));
+        check(controller.nextSize(4, stalled) == 4, "grew after a single stalled sample");
+        check(controller.nextSize(4, stalled) == 5, "did not grow while queued tasks made no progress");
+    }
+
+    private static void shrinksWhenIdle() {
+        Executor.AdaptiveController controller = new Executor.AdaptiveController(POLICY);
+        for (int i = 1; i < 10; i++) {
+            check(controller.nextSize(4, idle(4)) == 4, "shrank after " + i + " idle samples");
+        }
+        check(controller.nextSize(4, idle(4)) == 3, "did not shrink by one after ten idle samples");
+
+        for (int i = 1; i < 10; i++) controller.nextSize(3, idle(3));
+        check(controller.nextSize(3, normal(3)) == 3, "a normal sample changed the size");
+        for (int i = 1; i < 10; i++) {
+            check(controller.nextSize(3, idle(3)) == 3, "idle samples separated by a normal one made it shrink");
+        }
+        check(controller.nextSize(3, idle(3)) == 2, "did not shrink after ten fresh idle samples");
+
+        for (int i = 1; i < 10; i++) controller.nextSize(2, idle(2));
+        check(controller.nextSize(2, idle(2)) == 2, "shrank below minThreads");
+
+        // Busy workers are not idle even if nothing waited
+        ListenerPool.Sample busy = new ListenerPool.Sample(10, 0, INTERVAL * 4 * 3 / 4, 0);
+        for (int i = 0; i < 20; i++) {
+            check(controller.nextSize(4, busy) == 4, "shrank while the workers were busy");
+        }
+    }
+
+    private static void resizeKeepsQueuedTasks() throws InterruptedException {
+        ListenerPool pool = new ListenerPool(1, Thread.ofPlatform().daemon().factory());
+        pool.setTiming(true);
+        CountDownLatch gate = new CountDownLatch(1);
+        AtomicInteger ran = new AtomicInteger();
+        int tasks = 2_000;
+        try {
+            pool.execute(() -> {
+                try {
+                    gate.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            for (int i = 0; i < tasks; i++) {
+                pool.execute(ran::incrementAndGet);
+            }
+            pool.resize(4);
+            gate.countDown();
+            pool.resize(1);
+            pool.resize(3);
+            pool.resize(2);
+        } finally {
+            pool.shutdown();
+        }
+        check(pool.awaitTermination(10, TimeUnit.SECONDS), "the pool did not drain after resizing");
+        check(ran.get() == tasks, ran.get() + " of " + tasks + " queued tasks ran across resizes");
+        ListenerPool.Sample sample = pool.sample();
+        check(sample.completed() == tasks + 1, "timed " + sample.completed() + " of " + (tasks + 1) + " tasks");
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) throw new AssertionError(message);
+    }
+}
@@ -0,0 +1,125 @@
+package de.kiliansen.lib.ObservableValue.base;
+
+import de.kiliansen.lib.ObservableValue.value.ObservableValue;
+import de.kiliansen.lib.ObservableValue.value.ObservableValueChangeDef;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Checks batched listeners: changes arrive in order in batches of at most {@code maxBatch}, a
+ * {@code maxDelay} holds a batch back until it elapses or the batch is full, a throwing listener is
+ * reported and does not stop later batches, and a drain rejected by a shut down executor neither
+ * wedges the listener nor a flush.
+ */
+public final class BatchDeliveryTest {
+    private BatchDeliveryTest() {
+    }
+
+    public static void run() throws InterruptedException {
+        ordersAndSlicesBatches();
+        delaysUntilTimeoutOrFullBatch();
+        reportsListenerFailures();
+        recoversFromRejectedDrain();
+    }
+
+    private static void ordersAndSlicesBatches() throws InterruptedException {
+        ObservableValue<Integer> value = new ObservableValue<>(0);
+        List<List<Integer>> batches = new CopyOnWriteArrayList<>();
+        value.onChangeDefBatch(changes -> batches.add(changes.stream().map(ObservableValueChangeDef::newValue).toList()), 7, Duration.ZERO);
+        for (int i = 1; i <= 20_000; i++) {
+            value.set(i);
+        }
+        value.flush();
+
+        List<Integer> delivered = new ArrayList<>();
+        for (List<Integer> batch : batches) {
+            check(!batch.isEmpty() && batch.size() <= 7, "batch of " + batch.size() + " changes with maxBatch 7");
+            delivered.addAll(batch);
+        }
+        check(delivered.size() == 20_000, "delivered " + delivered.size() + " of 20000 changes");
+        for (int i = 0; i < delivered.size(); i++) {
+            if (delivered.get(i) != i + 1) {
+                check(false, "change " + (i + 1) + " delivered as " + delivered.get(i));
+                break;
+            }
+        }
+    }
+
+    private static void delaysUntilTimeoutOrFullBatch() throws InterruptedException {
+        ObservableValue<Integer> delayed = new ObservableValue<>(0);
+        List<List<ObservableValueChangeDef<Integer>>> batches = new CopyOnWriteArrayList<>();
+        delayed.onChangeDefBatch(changes -> batches.add(List.copyOf(changes)), 1_000, Duration.ofMillis(200));
+        long start = System.nanoTime();
+        delayed.set(1);
+        delayed.set(2);
+        delayed.set(3);
+        delayed.flush();
+        long elapsed = System.nanoTime() - start;
+        check(elapsed >= Duration.ofMillis(200).toNanos(), "a delayed batch was delivered after " + elapsed / 1_000_000 + " ms");
+        check(batches.size() == 1 && batches.get(0).size() == 3, "three changes within the delay were not one batch: " + batches);
+
+        ObservableValue<Integer> full = new ObservableValue<>(0);
+        List<Integer> sizes = new CopyOnWriteArrayList<>();
+        full.onChangeDefBatch(changes -> sizes.add(changes.size()), 5, Duration.ofSeconds(30));
+        for (int i = 1; i <= 5; i++) {
+            full.set(i);
+        }
+        check(full.flush(Duration.ofSeconds(5)), "a full batch waited for its delay");
+        check(sizes.equals(List.of(5)), "unexpected batches " + sizes);
+    }
+
+    private static void reportsListenerFailures() throws InterruptedException {
+        ConcurrentLinkedQueue<Throwable> reported = new ConcurrentLinkedQueue<>();
+        Thread.UncaughtExceptionHandler previous = Thread.getDefaultUncaughtExceptionHandler();
+        Thread.setDefaultUncaughtExceptionHandler((thread, e) -> reported.add(e));
+        try {
+            ObservableValue<Integer> value = new ObservableValue<>(0);
+            List<Integer> delivered = new CopyOnWriteArrayList<>();
+            value.onChangeDefBatch(changes -> {
+                for (ObservableValueChangeDef<Integer> change : changes) {
+                    if (change.newValue() == 1) throw new IllegalStateException("batch failed");
+                    delivered.add(change.newValue());
+                }
+            }, 1, Duration.ZERO);
+            value.set(1);
+            value.set(2);
+            value.flush();
+            check(delivered.equals(List.of(2)), "batches after a failing one: " + delivered);
+            check(reported.size() == 1 && reported.peek().getMessage().equals("batch failed"), "listener failure not reported: " + reported);
+        } finally {
+            Thread.setDefaultUncaughtExceptionHandler(previous);
+        }
+    }
+
+    private static void recoversFromRejectedDrain() throws InterruptedException {
+        int threads = Executor.getNumThreads();
+        ObservableValue<Integer> value = new ObservableValue<>(0);
+        List<Integer> delivered = new CopyOnWriteArrayList<>();
+        value.onChangeDefBatch(changes -> changes.forEach(change -> delivered.add(change.newValue())), 10, Duration.ZERO);
+
+        Executor.shutdownNow();
+        try {
+            value.set(1);
+            check(false, "a rejected drain was not rethrown");
+        } catch (RejectedExecutionException expected) {
+            // expected
+        } finally {
+            Executor.resize(threads, Duration.ofSeconds(1));
+        }
+        check(value.flush(Duration.ofSeconds(1)), "a flush waited for a rejected batch");
+
+        value.set(2);
+        value.set(3);
+        check(value.flush(Duration.ofSeconds(5)), "the batch listener did not resume after the executor was replaced");
+        check(delivered.equals(List.of(2, 3)), "deliveries after the executor was replaced: " + delivered);
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) throw new AssertionError(message);
+    }
+}
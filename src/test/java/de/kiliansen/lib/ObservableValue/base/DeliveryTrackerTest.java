@@ -0,0 +1,87 @@
+package de.kiliansen.lib.ObservableValue.base;
+
+import de.kiliansen.lib.ObservableValue.value.ObservableValue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Races deliveries entering a {@link DeliveryTracker} against concurrent flushes. An entered epoch
+ * must never have drained already, otherwise a flush could complete while the delivery still runs.
+ * Also checks that flushing an observable waits for its asynchronous listeners.
+ */
+public final class DeliveryTrackerTest {
+    private static final int ROUNDS = 2_000_000;
+
+    private DeliveryTrackerTest() {
+    }
+
+    public static void run() throws InterruptedException {
+        enterWhileFlushing();
+        flushWaitsForListeners();
+    }
+
+    private static void enterWhileFlushing() throws InterruptedException {
+        DeliveryTracker tracker = new DeliveryTracker();
+        AtomicInteger drainedOnEntry = new AtomicInteger();
+        AtomicBoolean done = new AtomicBoolean();
+        CountDownLatch finished = new CountDownLatch(3);
+
+        for (int t = 0; t < 2; t++) {
+            Thread.ofPlatform().start(() -> {
+                for (int i = 0; i < ROUNDS; i++) {
+                    DeliveryTracker.Epoch epoch = tracker.enter();
+                    if (epoch.isDrained()) drainedOnEntry.incrementAndGet();
+                    epoch.exit();
+                }
+                finished.countDown();
+            });
+        }
+        Thread.ofPlatform().start(() -> {
+            // Batch delivery style: keep one epoch and enter new ones only as flushes open them
+            DeliveryTracker.Epoch held = null;
+            for (int i = 0; i < ROUNDS; i++) {
+                DeliveryTracker.Epoch epoch = tracker.enter(held);
+                if (epoch.isDrained()) drainedOnEntry.incrementAndGet();
+                if (epoch != held) {
+                    if (held != null) held.exit();
+                    held = epoch;
+                }
+            }
+            if (held != null) held.exit();
+            finished.countDown();
+        });
+        Thread flusher = Thread.ofPlatform().start(() -> {
+            while (!done.get()) tracker.flush();
+        });
+
+        finished.await();
+        done.set(true);
+        flusher.join();
+        check(drainedOnEntry.get() == 0, drainedOnEntry.get() + " deliveries entered an epoch that had already drained");
+        check(tracker.flush().isDone(), "a flush without pending deliveries must complete immediately");
+    }
+
+    private static void flushWaitsForListeners() throws InterruptedException {
+        ObservableValue<Integer> value = new ObservableValue<>(0);
+        AtomicInteger delivered = new AtomicInteger();
+        value.onChange((oldValue, newValue) -> {
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            delivered.incrementAndGet();
+        }, false);
+        for (int i = 1; i <= 100; i++) {
+            value.set(i);
+        }
+        value.flush();
+        check(delivered.get() == 100, "flush returned after " + delivered.get() + " of 100 deliveries");
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) throw new AssertionError(message);
+    }
+}
@@ -0,0 +1,79 @@
+package de.kiliansen.lib.ObservableValue.base;
+
+import de.kiliansen.lib.ObservableValue.list.ObservableList;
+import de.kiliansen.lib.ObservableValue.map.ObservableMap;
+import de.kiliansen.lib.ObservableValue.value.ObservableValue;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Checks that same-thread listeners taking the change fields as arguments do not allocate. Each
+ * operation is measured with the thread's allocation counter once without and once with such a
+ * listener; the listener must not add a single byte per operation. List indices above 127 are used,
+ * so a boxed index would show up as a fresh {@link Integer} per event.
+ */
+public final class ListenerAllocationTest {
+    private static final int OPERATIONS = 200_000;
+    private static final com.sun.management.ThreadMXBean THREADS = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private static long sink;
+
+    private ListenerAllocationTest() {
+    }
+
+    public static void run() {
+        Integer[] values = new Integer[1_000];
+        for (int i = 0; i < values.length; i++) values[i] = 1_000 + i;
+
+        ObservableValue<Integer> value = new ObservableValue<>(0);
+        Runnable setValue = () -> {
+            for (int i = 0; i < OPERATIONS; i++) value.set(values[i % values.length]);
+        };
+        assertNoListenerAllocation("ObservableValue.onChange(BiConsumer)", setValue,
+                () -> value.onChange((oldValue, newValue) -> sink += newValue, true));
+
+        ObservableList<Integer> list = new ObservableList<>();
+        for (int i = 0; i < 200; i++) list.add(values[i]);
+        Runnable setList = () -> {
+            for (int i = 0; i < OPERATIONS; i++) list.set(128 + i % 72, values[i % values.length]);
+        };
+        assertNoListenerAllocation("ObservableList.onUpdate(IndexedChangeListener)", setList,
+                () -> list.onUpdate((oldValue, newValue, index) -> sink += index, true));
+        assertNoListenerAllocation("ObservableList.onUpdate(IndexedValueListener)", setList,
+                () -> list.onUpdate((newValue, index) -> sink += index, true));
+        assertNoListenerAllocation("ObservableList.onChange(ListChangeListener)", setList,
+                () -> list.onChange((index, oldValue, newValue, type) -> sink += index, true));
+
+        ObservableMap<Integer, Integer> map = new ObservableMap<>();
+        for (int i = 0; i < 200; i++) map.put(values[i], values[i]);
+        Runnable putMap = () -> {
+            for (int i = 0; i < OPERATIONS; i++) map.put(values[i % 200], values[(i + 1) % values.length]);
+        };
+        assertNoListenerAllocation("ObservableMap.onChange(MapChangeListener)", putMap,
+                () -> map.onChange((key, oldValue, newValue, type) -> sink += key, true));
+    }
+
+    private static void assertNoListenerAllocation(String name, Runnable operations, Runnable subscribe) {
+        long without = allocatedBytes(operations);
+        subscribe.run();
+        long with = allocatedBytes(operations);
+        // The counter is exact, but allow a few bytes in total for one-off allocations such as the
+        // copy of the listener array
+        if (with - without > 1_024) {
+            throw new AssertionError(name + " allocated " + (double) (with - without) / OPERATIONS + " extra bytes per event");
+        }
+    }
+
+    /**
+     * Returns the bytes allocated by the operations after they have been warmed up.
+     */
+    private static long allocatedBytes(Runnable operations) {
+        long allocated = Long.MAX_VALUE;
+        for (int round = 0; round < 5; round++) {
+            long before = THREADS.getCurrentThreadAllocatedBytes();
+            operations.run();
+            allocated = Math.min(allocated, THREADS.getCurrentThreadAllocatedBytes() - before);
+        }
+        return allocated;
+    }
+}
@@ -0,0 +1,61 @@
+package de.kiliansen.lib.ObservableValue.base;
+
+import de.kiliansen.lib.ObservableValue.list.ObservableList;
+import de.kiliansen.lib.ObservableValue.map.ObservableMap;
+import de.kiliansen.lib.ObservableValue.value.ObservableValue;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Checks {@link ThreadedListener} identity and threading: a listener must stay findable in a hash
+ * based collection while its threading mode changes, and asynchronous listeners of every observable
+ * type run on threads named by the shared executor's naming strategy, which the observables do not
+ * override.
+ */
+public final class ThreadedListenerTest {
+    private ThreadedListenerTest() {
+    }
+
+    public static void run() throws Exception {
+        equalityIgnoresThreadingMode();
+        observablesKeepExecutorThreadNames();
+    }
+
+    private static void equalityIgnoresThreadingMode() {
+        ObservableValue<Integer> value = new ObservableValue<>(0);
+        ThreadedListener<Integer, ?> listener = value.onChange((oldValue, newValue) -> {
+        }, true);
+        Set<ThreadedListener<Integer, ?>> set = new HashSet<>();
+        set.add(listener);
+        listener.setUseSameThread(false);
+        check(set.contains(listener), "a listener was lost from a HashSet after setUseSameThread(false)");
+        listener.setUseSameThread(true);
+        check(set.contains(listener), "a listener was lost from a HashSet after setUseSameThread(true)");
+    }
+
+    private static void observablesKeepExecutorThreadNames() throws InterruptedException {
+        Set<String> names = ConcurrentHashMap.newKeySet();
+        ObservableValue<Integer> value = new ObservableValue<>(0);
+        ObservableList<Integer> list = new ObservableList<>();
+        ObservableMap<Integer, Integer> map = new ObservableMap<>();
+        value.onChange((oldValue, newValue) -> names.add(Thread.currentThread().getName()), false);
+        list.onChange(change -> names.add(Thread.currentThread().getName()), false);
+        map.onChange(change -> names.add(Thread.currentThread().getName()), false);
+        value.set(1);
+        list.add(1);
+        map.put(1, 1);
+        value.flush();
+        list.flush();
+        map.flush();
+        check(!names.isEmpty(), "no asynchronous listener ran");
+        for (String name : names) {
+            check(name.startsWith("Executor-Thread-"), "an asynchronous listener ran on '" + name + "'");
+        }
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) throw new AssertionError(message);
+    }
+}
@@ -0,0 +1,181 @@
+package de.kiliansen.lib.ObservableValue.base;
+
+import de.kiliansen.lib.ObservableValue.list.ObservableList;
+import de.kiliansen.lib.ObservableValue.map.ObservableMap;
+import de.kiliansen.lib.ObservableValue.value.ObservableValue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Checks that a {@link Transaction} applies nothing before its commit, notifies listeners once per
+ * coalesced change afterwards, applies nothing on rollback, undoes a commit whose mutation throws
+ * without notifying anyone, still notifies every observable if a listener throws, and that isolated
+ * reads never observe a commit half-applied.
+ */
+public final class TransactionTest {
+    private TransactionTest() {
+    }
+
+    public static void run() throws InterruptedException {
+        commitCoalescesNotifications();
+        rollbackAppliesNothing();
+        failedCommitIsUndone();
+        throwingListenerDoesNotDropEvents();
+        isolatedReadsSeeWholeCommits();
+    }
+
+    private static void commitCoalescesNotifications() {
+        ObservableValue<String> status = new ObservableValue<>("new");
+        ObservableMap<String, Integer> positions = new ObservableMap<>(Map.of("ACME", 10));
+        ObservableList<String> rows = new ObservableList<>();
+        List<String> events = new ArrayList<>();
+        status.onChange((oldValue, newValue) -> events.add("status " + oldValue + "->" + newValue), true);
+        positions.onChange(change -> events.add("position " + change.key() + " " + change.oldValue() + "->" + change.newValue()), true);
+        rows.onChange(change -> events.add("row " + change.listChangeType() + " " + change.newValue()), true);
+
+        try (Transaction tx = Transaction.begin()) {
+            tx.set(status, "partial");
+            tx.set(status, "filled");
+            tx.put(positions, "ACME", 50);
+            tx.put(positions, "ACME", 100);
+            tx.put(positions, "INIT", 1);
+            tx.add(rows, "ACME filled");
+            check(status.get().equals("new") && positions.get("ACME") == 10 && rows.isEmpty(), "staged mutations were applied before the commit");
+            tx.commit();
+        }
+
+        check(status.get().equals("filled"), "value not committed: " + status.get());
+        check(positions.get("ACME") == 100 && positions.get("INIT") == 1, "map not committed: " + positions);
+        check(new ArrayList<>(rows).equals(List.of("ACME filled")), "list not committed: " + new ArrayList<>(rows));
+        check(events.equals(List.of("status new->filled", "position ACME 10->100", "position INIT null->1", "row ADD ACME filled")),
+                "unexpected notifications " + events);
+    }
+
+    private static void rollbackAppliesNothing() {
+        ObservableValue<String> status = new ObservableValue<>("new");
+        AtomicInteger notified = new AtomicInteger();
+        status.onChange((oldValue, newValue) -> notified.incrementAndGet(), true);
+
+        Transaction rolledBack = Transaction.begin();
+        rolledBack.set(status, "filled");
+        rolledBack.rollback();
+        try (Transaction closed = Transaction.begin()) {
+            closed.set(status, "filled");
+        }
+        check(status.get().equals("new") && notified.get() == 0, "a rolled back transaction was applied");
+
+        try {
+            rolledBack.commit();
+            check(false, "a rolled back transaction could be committed");
+        } catch (IllegalStateException expected) {
+            // expected
+        }
+    }
+
+    private static void failedCommitIsUndone() {
+        ObservableValue<String> status = new ObservableValue<>("new");
+        ObservableMap<String, Integer> positions = new ObservableMap<>(Map.of("ACME", 10, "INIT", 1));
+        ObservableList<String> rows = new ObservableList<>();
+        rows.add("opened");
+        AtomicInteger notified = new AtomicInteger();
+        status.onChange((oldValue, newValue) -> notified.incrementAndGet(), true);
+        positions.onChange(change -> notified.incrementAndGet(), true);
+        rows.onChange(change -> notified.incrementAndGet(), true);
+        AtomicBoolean customUndone = new AtomicBoolean();
+
+        Transaction tx = Transaction.begin();
+        tx.set(status, "filled");
+        tx.put(positions, "ACME", 100);
+        tx.put(positions, "NEW", 5);
+        tx.remove(positions, "INIT");
+        tx.remove(positions, "MISSING");
+        tx.add(rows, "ACME filled");
+        tx.stage(() -> {
+        }, () -> customUndone.set(true));
+        tx.stage(() -> {
+        }, () -> {
+            throw new IllegalStateException("undo failed");
+        });
+        tx.stage(() -> {
+            throw new IllegalArgumentException("mutation failed");
+        }, () -> check(false, "the failed mutation itself was undone"));
+        try {
+            tx.commit();
+            check(false, "the failing mutation was not rethrown");
+        } catch (IllegalArgumentException e) {
+            check(e.getSuppressed().length == 1 && e.getSuppressed()[0].getMessage().equals("undo failed"), "undo failure not suppressed");
+        }
+
+        check(status.get().equals("new"), "value not undone: " + status.get());
+        check(new HashMap<>(positions).equals(Map.of("ACME", 10, "INIT", 1)), "map not undone: " + positions);
+        check(new ArrayList<>(rows).equals(List.of("opened")), "list not undone: " + new ArrayList<>(rows));
+        check(customUndone.get(), "custom mutation not undone");
+        check(notified.get() == 0, notified.get() + " notifications for a failed commit");
+
+        // The failed commit must have released the lock and the committing state
+        try (Transaction next = Transaction.begin()) {
+            next.set(status, "filled");
+            next.commit();
+        }
+        check(status.get().equals("filled") && notified.get() == 1, "a commit after a failed one did not notify");
+    }
+
+    private static void throwingListenerDoesNotDropEvents() {
+        ObservableValue<String> status = new ObservableValue<>("new");
+        ObservableMap<String, Integer> positions = new ObservableMap<>();
+        ObservableList<String> rows = new ObservableList<>();
+        List<String> events = new ArrayList<>();
+        status.onChange((oldValue, newValue) -> {
+            throw new IllegalStateException("status listener failed");
+        }, true);
+        positions.onChange(change -> events.add("position " + change.key()), true);
+        rows.onChange(change -> {
+            throw new IllegalArgumentException("row listener failed");
+        }, true);
+        rows.onChange(change -> events.add("row " + change.newValue()), true);
+
+        try (Transaction tx = Transaction.begin()) {
+            tx.set(status, "filled");
+            tx.put(positions, "ACME", 100);
+            tx.add(rows, "ACME filled");
+            tx.commit();
+            check(false, "the listener failure was not rethrown");
+        } catch (IllegalStateException e) {
+            check(e.getSuppressed().length == 1 && e.getSuppressed()[0].getMessage().equals("row listener failed"),
+                    "the later listener failure was not suppressed");
+        }
+        check(status.get().equals("filled") && positions.get("ACME") == 100, "a listener failure undid the commit");
+        check(events.contains("position ACME"), "the map was not notified after the value's listener threw: " + events);
+    }
+
+    private static void isolatedReadsSeeWholeCommits() throws InterruptedException {
+        ObservableValue<Integer> bid = new ObservableValue<>(0);
+        ObservableValue<Integer> ask = new ObservableValue<>(0);
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicInteger torn = new AtomicInteger();
+        Thread reader = Thread.ofPlatform().start(() -> {
+            while (!done.get()) {
+                if (!Transaction.readIsolated(() -> bid.get().equals(ask.get()))) torn.incrementAndGet();
+            }
+        });
+        for (int i = 1; i <= 200_000; i++) {
+            try (Transaction tx = Transaction.begin()) {
+                tx.set(bid, i);
+                tx.set(ask, i);
+                tx.commit();
+            }
+        }
+        done.set(true);
+        reader.join();
+        check(torn.get() == 0, torn.get() + " isolated reads saw a commit half-applied");
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) throw new AssertionError(message);
+    }
+}
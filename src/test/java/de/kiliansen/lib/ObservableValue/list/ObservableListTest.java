@@ -0,0 +1,124 @@
+package de.kiliansen.lib.ObservableValue.list;
+
+import de.kiliansen.lib.ObservableValue.util.TriConsumer;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
+
+/**
+ * Checks that {@link ObservableList} does not call listeners while holding its mutation lock: a
+ * same-thread listener that waits for another thread mutating the list must not deadlock, and the
+ * other thread's change is delivered after the current one, in mutation order. Also checks that a
+ * throwing listener is rethrown to the mutator without blocking later deliveries, that a flush
+ * waits for changes queued behind another thread's delivery, and that listeners written against the
+ * earlier boxed-index helper types can still be registered as method references.
+ */
+public final class ObservableListTest {
+    private ObservableListTest() {
+    }
+
+    public static void run() throws InterruptedException {
+        listenerMayWaitForAnotherWriter();
+        throwingListenerDoesNotBlockDelivery();
+        flushWaitsForQueuedChanges();
+        boxedIndexListenersAsMethodReferences();
+    }
+
+    private static void boxedIndexListenersAsMethodReferences() {
+        ObservableList<String> list = new ObservableList<>();
+        List<String> events = new ArrayList<>();
+        TriConsumer<String, String, Integer> updated = (oldValue, newValue, index) -> events.add("update " + oldValue + "->" + newValue + " at " + index);
+        BiConsumer<String, Integer> added = (value, index) -> events.add("add " + value + " at " + index);
+        list.onAdd(added::accept, true);
+        list.onUpdate(updated::accept, true);
+        list.add("a");
+        list.add("b");
+        list.set(1, "c");
+        check(events.equals(List.of("add a at 0", "add b at 1", "update b->c at 1")), "unexpected events " + events);
+    }
+
+    private static void listenerMayWaitForAnotherWriter() throws InterruptedException {
+        ObservableList<String> list = new ObservableList<>();
+        List<String> delivered = new ArrayList<>();
+        AtomicBoolean otherWriterReturned = new AtomicBoolean();
+        list.onChange((index, oldValue, newValue, type) -> {
+            delivered.add(newValue);
+            if (!newValue.equals("first")) return;
+            Thread writer = Thread.ofPlatform().start(() -> {
+                list.add("second");
+                list.addAll(List.of("third", "fourth"));
+                otherWriterReturned.set(true);
+            });
+            try {
+                writer.join(5_000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, true);
+
+        list.add("first");
+        check(otherWriterReturned.get(), "a writer blocked while a listener of the list was running");
+        check(delivered.equals(List.of("first", "second", "third", "fourth")), "changes delivered out of mutation order: " + delivered);
+        check(new ArrayList<>(list).equals(delivered), "list contents " + new ArrayList<>(list));
+    }
+
+    private static void throwingListenerDoesNotBlockDelivery() {
+        ObservableList<Integer> list = new ObservableList<>();
+        List<Integer> delivered = new ArrayList<>();
+        list.onChange((index, oldValue, newValue, type) -> {
+            if (newValue != null && newValue == 1) throw new IllegalStateException("listener failed");
+            delivered.add(newValue);
+        }, true);
+
+        try {
+            list.add(1);
+            check(false, "the listener's exception was not rethrown");
+        } catch (IllegalStateException expected) {
+            // expected
+        }
+        list.add(2);
+        list.set(1, 3);
+        check(delivered.equals(List.of(2, 3)), "deliveries after a failed listener: " + delivered);
+    }
+
+    private static void flushWaitsForQueuedChanges() throws InterruptedException {
+        ObservableList<Integer> list = new ObservableList<>();
+        CountDownLatch blocking = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicBoolean queuedDelivered = new AtomicBoolean();
+        list.onChange((index, oldValue, newValue, type) -> {
+            if (newValue != 1) return;
+            blocking.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, true);
+        list.onChange(change -> {
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (change.newValue() == 2) queuedDelivered.set(true);
+        }, false);
+
+        Thread delivering = Thread.ofPlatform().start(() -> list.add(1));
+        blocking.await();
+        list.add(2);
+        check(!list.flush(Duration.ofMillis(200)), "flush returned while a queued change was not delivered");
+        release.countDown();
+        list.flush();
+        check(queuedDelivered.get(), "flush returned before the queued change reached the asynchronous listener");
+        delivering.join();
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) throw new AssertionError(message);
+    }
+}
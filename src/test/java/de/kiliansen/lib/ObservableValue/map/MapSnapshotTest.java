@@ -0,0 +1,95 @@
+package de.kiliansen.lib.ObservableValue.map;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Compares {@link ObservableMap} and its {@link MapSnapshot}s against a {@link HashMap} over 300k
+ * random puts, removes and clears. Keys are drawn with few distinct hash codes, so the trie builds
+ * deep paths and collision nodes, and removes collapse them again.
+ */
+public final class MapSnapshotTest {
+    private static final int OPERATIONS = 300_000;
+    private static final int KEYS = 5_000;
+
+    private MapSnapshotTest() {
+    }
+
+    /**
+     * A key whose hash code is chosen independently of its identity.
+     */
+    private record Key(int id, int hash) {
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    public static void run() {
+        Random random = new Random(28);
+        Key[] keys = new Key[KEYS];
+        for (int i = 0; i < KEYS; i++) {
+            int hash = switch (i % 4) {
+                case 0 -> random.nextInt();            // spread over the whole trie
+                case 1 -> random.nextInt(64);          // shares the upper levels
+                case 2 -> random.nextInt(8) << 25;     // differs only in the last level
+                default -> 0x5EED;                     // full collisions
+            };
+            keys[i] = new Key(i, hash);
+        }
+
+        ObservableMap<Key, Integer> map = new ObservableMap<>();
+        Map<Key, Integer> expected = new HashMap<>();
+        MapSnapshot<Key, Integer> held = map.snapshot();
+        Map<Key, Integer> heldExpected = new HashMap<>();
+        long version = map.snapshot().version();
+
+        for (int op = 0; op < OPERATIONS; op++) {
+            Key key = keys[random.nextInt(KEYS)];
+            int action = random.nextInt(100);
+            if (action < 60) {
+                Integer value = random.nextInt(1_000);
+                check(eq(map.put(key, value), expected.put(key, value)), "put returned a wrong old value at op " + op);
+                version++;
+            } else if (action < 99) {
+                Integer removed = expected.remove(key);
+                check(eq(map.remove(key), removed), "remove returned a wrong old value at op " + op);
+                if (removed != null) version++;
+            } else if (random.nextInt(20) == 0) {
+                map.clear();
+                expected.clear();
+                version++;
+            }
+
+            Key probe = keys[random.nextInt(KEYS)];
+            check(eq(map.get(probe), expected.get(probe)), "get diverged at op " + op);
+            check(map.size() == expected.size(), "size diverged at op " + op);
+            check(map.snapshot().version() == version, "version diverged at op " + op);
+
+            if (op % 10_000 == 0) {
+                check(map.snapshot().equals(expected), "snapshot contents diverged at op " + op);
+                check(held.equals(heldExpected), "an older snapshot changed at op " + op);
+                held = map.snapshot();
+                heldExpected = new HashMap<>(expected);
+            }
+        }
+        check(map.snapshot().equals(expected), "final contents diverged");
+        check(map.keySet().equals(expected.keySet()), "keySet diverged");
+
+        try {
+            map.keySet().add(keys[0]);
+            check(false, "keySet must be immutable");
+        } catch (UnsupportedOperationException expectedFailure) {
+            // The views are snapshots
+        }
+    }
+
+    private static boolean eq(Integer a, Integer b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) throw new AssertionError(message);
+    }
+}
@@ -0,0 +1,142 @@
+package de.kiliansen.lib.ObservableValue.map;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+
+/**
+ * Runs random puts, removes and lookups against an {@link OffHeapLongMap} and a {@link HashMap}
+ * and compares every result, the change events and, periodically, the whole contents. Keys come
+ * from a small range around 0, so key {@code 0} is hit often and the tables are loaded enough for
+ * long probe sequences whose removal exercises the backward-shift delete. A memory-mapped map is
+ * closed and reopened in between and must come back with the same contents.
+ */
+public final class OffHeapLongMapTest {
+    private static final int OPERATIONS = 2_000_000;
+    private static final int CAPACITY = 4096;
+    private static final int KEY_RANGE = 1200;
+    private static final long ABSENT = Long.MIN_VALUE;
+
+    private OffHeapLongMapTest() {
+    }
+
+    public static void run() throws IOException {
+        Random random = new Random(39);
+        Map<Long, Long> expected = new HashMap<>();
+        try (OffHeapLongMap map = new OffHeapLongMap(CAPACITY)) {
+            Event event = new Event();
+            map.onChange((key, oldValue, newValue, type) -> event.set(key, oldValue, newValue, type), true);
+            for (int i = 0; i < OPERATIONS; i++) {
+                step(map, expected, random, event);
+                if (i % 100_000 == 0) compare(map, expected);
+            }
+            compare(map, expected);
+
+            map.clear();
+            expected.clear();
+            compare(map, expected);
+            check(event.type == MapChangeType.CLEAR, "clear did not fire");
+        }
+        mappedReopen(random);
+    }
+
+    private static void mappedReopen(Random random) throws IOException {
+        Path file = Files.createTempFile("off-heap-long-map", ".bin");
+        try {
+            Files.delete(file);
+            Map<Long, Long> expected = new HashMap<>();
+            Event event = new Event();
+            for (int reopen = 0; reopen < 4; reopen++) {
+                // The capacity only applies to a new file, an existing one keeps its geometry
+                try (OffHeapLongMap map = OffHeapLongMap.mapped(file, reopen == 0 ? CAPACITY : 1)) {
+                    compare(map, expected);
+                    map.onChange((key, oldValue, newValue, type) -> event.set(key, oldValue, newValue, type), true);
+                    for (int i = 0; i < 100_000; i++) {
+                        step(map, expected, random, event);
+                    }
+                    compare(map, expected);
+                    map.force();
+                }
+            }
+
+            Files.write(file, new byte[64]);
+            try {
+                OffHeapLongMap.mapped(file, CAPACITY).close();
+                check(false, "a file not written by the map was accepted");
+            } catch (IOException expectedFailure) {
+                // expected
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static void step(OffHeapLongMap map, Map<Long, Long> expected, Random random, Event event) {
+        long key = random.nextInt(2 * KEY_RANGE + 1) - KEY_RANGE;
+        int operation = random.nextInt(100);
+        event.type = null;
+        if (operation < 45) {
+            long value = random.nextInt(4) == 0 ? 0 : random.nextLong();
+            Long previous = expected.put(key, value);
+            long returned = map.put(key, value, ABSENT);
+            check(returned == (previous == null ? ABSENT : previous), "put(" + key + ") returned " + returned + ", expected " + previous);
+            check(event.matches(key, previous, value, MapChangeType.PUT), "put(" + key + ") fired " + event);
+        } else if (operation < 80) {
+            Long previous = expected.remove(key);
+            long returned = map.remove(key, ABSENT);
+            check(returned == (previous == null ? ABSENT : previous), "remove(" + key + ") returned " + returned + ", expected " + previous);
+            check(previous == null ? event.type == null : event.matches(key, previous, null, MapChangeType.REMOVE), "remove(" + key + ") fired " + event);
+        } else if (operation < 95) {
+            Long value = expected.get(key);
+            long returned = map.get(key, ABSENT);
+            check(returned == (value == null ? ABSENT : value), "get(" + key + ") returned " + returned + ", expected " + value);
+        } else {
+            check(map.containsKey(key) == expected.containsKey(key), "containsKey(" + key + ") differs");
+        }
+    }
+
+    private static void compare(OffHeapLongMap map, Map<Long, Long> expected) {
+        check(map.size() == expected.size(), "size " + map.size() + ", expected " + expected.size());
+        Map<Long, Long> actual = new HashMap<>();
+        map.forEach((key, value) -> check(actual.put(key, value) == null, "forEach visited " + key + " twice"));
+        check(actual.equals(expected), "contents differ from the reference map");
+        for (long key = -KEY_RANGE; key <= KEY_RANGE; key++) {
+            Long value = expected.get(key);
+            check(map.get(key, ABSENT) == (value == null ? ABSENT : value), "get(" + key + ") differs");
+        }
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) throw new AssertionError(message);
+    }
+
+    /**
+     * The last change event fired by a map.
+     */
+    private static final class Event {
+        private Long key;
+        private Long oldValue;
+        private Long newValue;
+        private MapChangeType type;
+
+        void set(Long key, Long oldValue, Long newValue, MapChangeType type) {
+            this.key = key;
+            this.oldValue = oldValue;
+            this.newValue = newValue;
+            this.type = type;
+        }
+
+        boolean matches(long key, Long oldValue, Long newValue, MapChangeType type) {
+            return this.type == type && this.key != null && this.key == key && Objects.equals(this.oldValue, oldValue) && Objects.equals(this.newValue, newValue);
+        }
+
+        @Override
+        public String toString() {
+            return type + " " + key + " " + oldValue + "->" + newValue;
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package de.kiliansen.lib.ObservableValue.map;
+
+import de.kiliansen.lib.ObservableValue.base.PlacementPolicy;
+import de.kiliansen.lib.ObservableValue.base.ThreadedListener;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Checks partitioned dispatch of {@link ObservableMap}: several writers updating the same few keys
+ * must produce, per key, an unbroken chain of old and new values at an asynchronous listener, in
+ * version order. Writers racing with enabling and disabling the dispatcher must never see an
+ * exception, and listeners running in the writer's thread must not run under a lane lock.
+ */
+public final class PartitionedDispatchTest {
+    private static final int WRITERS = 8;
+    private static final int KEYS = 3;
+    private static final int PER_WRITER = 100_000;
+
+    private PartitionedDispatchTest() {
+    }
+
+    public static void run() throws Exception {
+        sharedKeyChains();
+        switchWhileWriting();
+        adaptiveListenerOutsideLock();
+    }
+
+    private static void sharedKeyChains() throws Exception {
+        ObservableMap<Integer, Long> map = new ObservableMap<>();
+        map.enablePartitionedDispatch(4);
+        AtomicLong sequence = new AtomicLong();
+        long[] lastValue = new long[KEYS];
+        long[] lastVersion = new long[KEYS];
+        long[] events = new long[KEYS];
+        AtomicInteger brokenChains = new AtomicInteger();
+        map.onChangeDef(change -> {
+            // Runs on the key's lane only, so the per-key arrays are confined to one thread
+            int key = change.key();
+            long expectedOld = events[key] == 0 ? -1 : lastValue[key];
+            long old = change.oldValue() == null ? -1 : change.oldValue();
+            if (old != expectedOld || change.version() <= lastVersion[key]) brokenChains.incrementAndGet();
+            lastValue[key] = change.newValue();
+            lastVersion[key] = change.version();
+            events[key]++;
+        }, false);
+
+        runWriters(writer -> {
+            for (int i = 0; i < PER_WRITER; i++) {
+                map.put(i % KEYS, sequence.getAndIncrement());
+            }
+        });
+        map.flush();
+        long total = 0;
+        for (long count : events) total += count;
+        check(total == (long) WRITERS * PER_WRITER, "the listener received " + total + " of " + (long) WRITERS * PER_WRITER + " events");
+        check(brokenChains.get() == 0, brokenChains.get() + " events did not continue their key's old -> new chain");
+        for (int key = 0; key < KEYS; key++) {
+            check(lastValue[key] == map.get(key), "the last event of key " + key + " does not match the map");
+        }
+        map.disablePartitionedDispatch();
+    }
+
+    private static void switchWhileWriting() throws Exception {
+        ObservableMap<Integer, Integer> map = new ObservableMap<>();
+        AtomicLong delivered = new AtomicLong();
+        map.onChangeDef(change -> delivered.incrementAndGet(), false);
+        AtomicBoolean done = new AtomicBoolean();
+        Thread switcher = Thread.ofPlatform().start(() -> {
+            while (!done.get()) {
+                map.enablePartitionedDispatch(2);
+                map.disablePartitionedDispatch();
+            }
+        });
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        try {
+            runWriters(writer -> {
+                try {
+                    for (int i = 0; i < PER_WRITER / 4; i++) {
+                        if (i % 1_000 == 999) map.clear();
+                        else map.put(i % 64, i);
+                    }
+                } catch (Throwable t) {
+                    failure.compareAndSet(null, t);
+                }
+            });
+        } finally {
+            done.set(true);
+            switcher.join();
+        }
+        check(failure.get() == null, "a write failed while the dispatcher was switched: " + failure.get());
+        map.flush();
+        check(delivered.get() == (long) WRITERS * (PER_WRITER / 4), "the listener received " + delivered.get() + " of " + (long) WRITERS * (PER_WRITER / 4) + " events");
+    }
+
+    private static void adaptiveListenerOutsideLock() throws Exception {
+        ObservableMap<Integer, Integer> map = new ObservableMap<>();
+        map.enablePartitionedDispatch(2);
+        AtomicBoolean reentered = new AtomicBoolean();
+        ThreadedListener<MapTypes<Integer, Integer>, ObservableMapChangeDef<MapTypes<Integer, Integer>, Integer, Integer>> listener =
+                map.onChangeDef(change -> {
+                    if (change.newValue() != 1) return;
+                    // Another thread writes the same key, so it needs the lane lock this put held
+                    Thread writer = Thread.ofPlatform().start(() -> map.put(0, 2));
+                    try {
+                        writer.join(TimeUnit.SECONDS.toMillis(5));
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    reentered.set(!writer.isAlive());
+                }, true);
+        listener.enableAdaptivePlacement(new PlacementPolicy(null));
+        map.put(0, 1);
+        map.flush();
+        check(reentered.get(), "an adaptive listener placed in the writer's thread ran under the lane lock");
+        check(map.get(0) == 2, "the write from inside the listener was not applied");
+        map.disablePartitionedDispatch();
+    }
+
+    private interface Writer {
+        void run(int writer) throws Exception;
+    }
+
+    private static void runWriters(Writer writer) throws Exception {
+        List<Thread> threads = new ArrayList<>();
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        for (int w = 0; w < WRITERS; w++) {
+            int id = w;
+            threads.add(Thread.ofPlatform().start(() -> {
+                try {
+                    writer.run(id);
+                } catch (Exception e) {
+                    failure.compareAndSet(null, e);
+                }
+            }));
+        }
+        for (Thread thread : threads) thread.join();
+        if (failure.get() != null) throw failure.get();
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) throw new AssertionError(message);
+    }
+}
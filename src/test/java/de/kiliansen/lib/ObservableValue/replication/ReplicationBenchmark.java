@@ -0,0 +1,137 @@
+package de.kiliansen.lib.ObservableValue.replication;
+
+import de.kiliansen.lib.ObservableValue.map.MapChangeType;
+import de.kiliansen.lib.ObservableValue.map.ObservableMap;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Measures replication throughput and latency over loopback, with leader, followers and writer in
+ * one JVM. Every value is the {@link System#nanoTime()} of its put, so each follower records the
+ * latency of every change it applies.
+ * <p>
+ * For 1, 2, 4 and 8 followers it runs a saturated writer ({@code bench.changes} puts, default 500k)
+ * and a writer paced at {@code bench.pacedRate} changes per second (default 10k) for two seconds,
+ * then checks that every follower and one that joins late through a snapshot match the leader.
+ * Exits with status 1 if a follower diverges. Run with {@code mvn -Pstress verify}.
+ */
+public final class ReplicationBenchmark {
+    private static final int KEYS = 1_000;
+    private static final int CHANGES = Integer.getInteger("bench.changes", 500_000);
+    private static final int PACED_RATE = Integer.getInteger("bench.pacedRate", 10_000);
+    private static final long TIMEOUT_NANOS = 120_000_000_000L;
+
+    private ReplicationBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        boolean inSync = true;
+        System.out.println("saturated writer, " + CHANGES + " puts:");
+        for (int followers : new int[]{1, 2, 4, 8}) {
+            inSync &= run(followers, CHANGES, 0);
+        }
+        System.out.println("paced at " + PACED_RATE + " changes/s:");
+        for (int followers : new int[]{1, 2, 4, 8}) {
+            inSync &= run(followers, PACED_RATE * 2, PACED_RATE);
+        }
+        System.exit(inSync ? 0 : 1);
+    }
+
+    /**
+     * Applied changes of one follower and the latency of each, written by its receiving thread.
+     */
+    private static final class Recorder {
+        final long[] latencies;
+        volatile int count;
+
+        Recorder(int capacity) {
+            latencies = new long[capacity];
+        }
+
+        void record(long sentNanos) {
+            int n = count;
+            if (n < latencies.length) latencies[n] = System.nanoTime() - sentNanos;
+            count = n + 1;
+        }
+    }
+
+    private static boolean run(int followerCount, int changes, int rate) throws Exception {
+        ObservableMap<Integer, Long> source = new ObservableMap<>();
+        InetSocketAddress any = new InetSocketAddress(InetAddress.getLoopbackAddress(), 0);
+        try (MapReplicationLeader<Integer, Long> leader = new MapReplicationLeader<>(source, Codec.INTEGER, Codec.LONG, any)) {
+            List<ObservableMap<Integer, Long>> replicas = new ArrayList<>();
+            List<MapReplicationFollower<Integer, Long>> followers = new ArrayList<>();
+            List<Recorder> recorders = new ArrayList<>();
+            for (int i = 0; i < followerCount; i++) {
+                ObservableMap<Integer, Long> replica = new ObservableMap<>();
+                Recorder recorder = new Recorder(changes);
+                replica.onChange((key, oldValue, newValue, type) -> {
+                    if (type == MapChangeType.PUT) recorder.record(newValue);
+                }, true);
+                replicas.add(replica);
+                recorders.add(recorder);
+                followers.add(new MapReplicationFollower<>(replica, Codec.INTEGER, Codec.LONG, leader.getLocalAddress()));
+            }
+            while (leader.getFollowerCount() < followerCount) Thread.sleep(1);
+            Thread.sleep(100);
+            for (Recorder recorder : recorders) recorder.count = 0;
+
+            long start = System.nanoTime();
+            long interval = rate == 0 ? 0 : 1_000_000_000L / rate;
+            for (int i = 0; i < changes; i++) {
+                if (interval > 0) {
+                    long due = start + i * interval;
+                    while (System.nanoTime() < due) LockSupport.parkNanos(Math.max(1, due - System.nanoTime() - 50_000));
+                }
+                source.put(i % KEYS, System.nanoTime());
+            }
+            long target = source.version();
+            for (MapReplicationFollower<Integer, Long> follower : followers) {
+                while (follower.getVersion() < target) {
+                    if (System.nanoTime() - start > TIMEOUT_NANOS) break;
+                    Thread.sleep(1);
+                }
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+
+            long[] all = new long[0];
+            for (Recorder recorder : recorders) {
+                int n = Math.min(recorder.count, recorder.latencies.length);
+                int offset = all.length;
+                all = Arrays.copyOf(all, offset + n);
+                System.arraycopy(recorder.latencies, 0, all, offset, n);
+            }
+            Arrays.sort(all);
+            String latency = String.format("p50 %6.1f ms, p99 %6.1f ms", percentile(all, 0.5) / 1e6, percentile(all, 0.99) / 1e6);
+            if (rate == 0) {
+                System.out.printf("  %d follower(s)  %4.0fk changes/s, %s%n", followerCount, changes / seconds / 1_000, latency);
+            } else {
+                System.out.printf("  %d follower(s)  %s%n", followerCount, latency);
+            }
+
+            boolean inSync = true;
+            for (int i = 0; i < followerCount; i++) {
+                inSync &= replicas.get(i).snapshot().equals(source.snapshot());
+                followers.get(i).close();
+            }
+            ObservableMap<Integer, Long> late = new ObservableMap<>();
+            try (MapReplicationFollower<Integer, Long> follower = new MapReplicationFollower<>(late, Codec.INTEGER, Codec.LONG, leader.getLocalAddress())) {
+                long deadline = System.nanoTime() + TIMEOUT_NANOS;
+                while (follower.getVersion() < target && System.nanoTime() < deadline) Thread.sleep(1);
+                inSync &= late.snapshot().equals(source.snapshot());
+            }
+            if (!inSync) System.out.println("  FAILED: a follower does not match the leader");
+            return inSync;
+        }
+    }
+
+    private static double percentile(long[] sorted, double quantile) {
+        if (sorted.length == 0) return Double.NaN;
+        return sorted[(int) Math.min(sorted.length - 1, Math.ceil(quantile * sorted.length) - 1)];
+    }
+}
@@ -0,0 +1,124 @@
+package de.kiliansen.lib.ObservableValue.replication;
+
+import de.kiliansen.lib.ObservableValue.map.ObservableMap;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Random;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Replicates maps over loopback and checks that followers converge: from a snapshot and the
+ * following tail, after the leader was replaced by another run, and when a listener that runs
+ * before the leader's throws and the leader never records that version.
+ */
+public final class ReplicationTest {
+    private static final long TIMEOUT_MILLIS = 20_000;
+
+    private ReplicationTest() {
+    }
+
+    public static void run() throws Exception {
+        snapshotAndTail();
+        newLeaderRun();
+        throwingListener();
+    }
+
+    private static void snapshotAndTail() throws Exception {
+        ObservableMap<Integer, Long> source = new ObservableMap<>();
+        Random random = new Random(30);
+        mutate(source, random, 20_000);
+        try (MapReplicationLeader<Integer, Long> leader = leader(source, 0)) {
+            ObservableMap<Integer, Long> replica = new ObservableMap<>();
+            try (MapReplicationFollower<Integer, Long> follower = follower(replica, leader)) {
+                mutate(source, random, 50_000);
+                awaitInSync(source, replica, follower, "snapshot and tail");
+            }
+        }
+    }
+
+    /**
+     * A follower synced with one leader run reconnects to a new leader whose map has passed the
+     * follower's version with different contents. The version must not be trusted.
+     */
+    private static void newLeaderRun() throws Exception {
+        Random random = new Random(300);
+        ObservableMap<Integer, Long> first = new ObservableMap<>();
+        mutate(first, random, 5_000);
+        ObservableMap<Integer, Long> replica = new ObservableMap<>();
+        MapReplicationLeader<Integer, Long> leader = leader(first, 0);
+        int port = leader.getLocalAddress().getPort();
+        try (MapReplicationFollower<Integer, Long> follower = follower(replica, leader)) {
+            awaitInSync(first, replica, follower, "first run");
+            leader.close();
+
+            ObservableMap<Integer, Long> second = new ObservableMap<>();
+            try (MapReplicationLeader<Integer, Long> next = leader(second, port)) {
+                // Runs ahead of the follower's version before it reconnects, with unrelated contents
+                mutate(second, random, 5_100);
+                awaitInSync(second, replica, follower, "second run");
+                check(next.getFollowerCount() == 1, "the follower did not reconnect to the new run");
+            }
+        } finally {
+            leader.close();
+        }
+    }
+
+    private static void throwingListener() throws Exception {
+        ObservableMap<Integer, Long> source = new ObservableMap<>();
+        source.onChange((key, oldValue, newValue, type) -> {
+            if (Long.valueOf(-1).equals(newValue)) throw new IllegalStateException("listener failure");
+        }, true);
+        try (MapReplicationLeader<Integer, Long> leader = leader(source, 0)) {
+            ObservableMap<Integer, Long> replica = new ObservableMap<>();
+            try (MapReplicationFollower<Integer, Long> follower = follower(replica, leader)) {
+                Random random = new Random(3_000);
+                mutate(source, random, 1_000);
+                // Streaming, so the follower has to get past the lost version rather than start from a snapshot
+                awaitInSync(source, replica, follower, "before the failure");
+                try {
+                    source.put(7, -1L);
+                    check(false, "the failing listener did not throw");
+                } catch (IllegalStateException expected) {
+                    // The map changed, but the leader never saw the event
+                }
+                mutate(source, random, 1_000);
+                awaitInSync(source, replica, follower, "lost version");
+            }
+        }
+    }
+
+    private static void mutate(ObservableMap<Integer, Long> map, Random random, int operations) {
+        for (int i = 0; i < operations; i++) {
+            int key = random.nextInt(500);
+            if (random.nextInt(4) == 0) map.remove(key);
+            else map.put(key, random.nextLong(1_000_000));
+        }
+    }
+
+    private static MapReplicationLeader<Integer, Long> leader(ObservableMap<Integer, Long> map, int port) throws Exception {
+        return new MapReplicationLeader<>(map, Codec.INTEGER, Codec.LONG, new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+    }
+
+    private static MapReplicationFollower<Integer, Long> follower(ObservableMap<Integer, Long> replica, MapReplicationLeader<Integer, Long> leader) {
+        return new MapReplicationFollower<>(replica, Codec.INTEGER, Codec.LONG, leader.getLocalAddress());
+    }
+
+    private static void awaitInSync(ObservableMap<Integer, Long> source, ObservableMap<Integer, Long> replica,
+                                    MapReplicationFollower<Integer, Long> follower, String scenario) throws InterruptedException {
+        await(() -> follower.getVersion() == source.version(), scenario + ": follower stuck at version " + follower.getVersion() + " of " + source.version());
+        check(replica.snapshot().equals(source.snapshot()), scenario + ": follower contents differ from the leader");
+    }
+
+    private static void await(BooleanSupplier condition, String message) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) throw new AssertionError(message);
+            Thread.sleep(10);
+        }
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) throw new AssertionError(message);
+    }
+}
@@ -0,0 +1,109 @@
+package de.kiliansen.lib.ObservableValue.stats;
+
+import de.kiliansen.lib.ObservableValue.value.ObservableValue;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Checks {@link Ewma} against hand-computed averages on a fake clock: a sample one half-life after
+ * the previous one moves the average halfway, samples within the same clock tick enter as their mean
+ * with the weight of that tick, and a clock running backwards does not move the average more than
+ * the same tick would.
+ */
+public final class EwmaTest {
+    private static final Duration HALF_LIFE = Duration.ofMillis(10);
+    private static final double EPSILON = 1e-9;
+
+    private EwmaTest() {
+    }
+
+    public static void run() {
+        halvesPerHalfLife();
+        sameTickSamplesCount();
+        backwardsClockIsSameTick();
+        followsTheSource();
+    }
+
+    private static void halvesPerHalfLife() {
+        AtomicLong clock = new AtomicLong();
+        ObservableValue<Double> source = new ObservableValue<>(0.0);
+        try (Ewma ewma = new Ewma(source, HALF_LIFE, clock::get)) {
+            check(Double.isNaN(ewma.average().get()), "the average was set before the first sample");
+            ewma.add(0);
+            check(ewma.average().get() == 0, "the first sample did not become the average");
+            clock.addAndGet(HALF_LIFE.toNanos());
+            ewma.add(100);
+            checkAverage(ewma, 50, "one half-life later");
+            clock.addAndGet(2 * HALF_LIFE.toNanos());
+            ewma.add(50);
+            checkAverage(ewma, 50, "a sample equal to the average");
+            clock.addAndGet(2 * HALF_LIFE.toNanos());
+            ewma.add(0);
+            checkAverage(ewma, 12.5, "two half-lives later");
+        }
+    }
+
+    private static void sameTickSamplesCount() {
+        AtomicLong clock = new AtomicLong();
+        ObservableValue<Double> source = new ObservableValue<>(0.0);
+        try (Ewma ewma = new Ewma(source, HALF_LIFE, clock::get)) {
+            ewma.add(10);
+            ewma.add(20);
+            checkAverage(ewma, 15, "two samples in the first tick");
+
+            clock.addAndGet(HALF_LIFE.toNanos());
+            ewma.add(115);
+            checkAverage(ewma, 65, "the first sample of a tick");
+            ewma.add(315);
+            checkAverage(ewma, 115, "a second sample in the same tick");
+            for (int i = 0; i < 98; i++) {
+                ewma.add(215);
+            }
+            checkAverage(ewma, 115, "a burst of 100 samples in the same tick");
+        }
+    }
+
+    private static void backwardsClockIsSameTick() {
+        AtomicLong clock = new AtomicLong(1_000_000_000L);
+        ObservableValue<Double> source = new ObservableValue<>(0.0);
+        try (Ewma ewma = new Ewma(source, HALF_LIFE, clock::get)) {
+            ewma.add(0);
+            clock.addAndGet(HALF_LIFE.toNanos());
+            ewma.add(100);
+            clock.addAndGet(-HALF_LIFE.toNanos() / 2);
+            ewma.add(300);
+            checkAverage(ewma, 100, "a sample from a clock that went backwards");
+            clock.addAndGet(HALF_LIFE.toNanos() / 2 + HALF_LIFE.toNanos());
+            ewma.add(0);
+            checkAverage(ewma, 50, "one half-life after the last forward tick");
+        }
+    }
+
+    private static void followsTheSource() {
+        AtomicLong clock = new AtomicLong();
+        ObservableValue<Double> source = new ObservableValue<>(0.0);
+        try (Ewma ewma = new Ewma(source, HALF_LIFE, clock::get)) {
+            source.set(40.0);
+            checkAverage(ewma, 40, "the first change of the source");
+            clock.addAndGet(HALF_LIFE.toNanos());
+            source.set(0.0);
+            source.set(0.0, true);
+            checkAverage(ewma, 20, "a forced repeat within the same tick");
+            clock.addAndGet(HALF_LIFE.toNanos());
+            source.set(0.0);
+            checkAverage(ewma, 20, "an unforced repeat, which the source does not notify");
+            source.set(0.0, true);
+            checkAverage(ewma, 10, "a forced repeat one half-life later");
+        }
+    }
+
+    private static void checkAverage(Ewma ewma, double expected, String what) {
+        double actual = ewma.average().get();
+        check(Math.abs(actual - expected) < EPSILON, "average after " + what + " is " + actual + " instead of " + expected);
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) throw new AssertionError(message);
+    }
+}
@@ -0,0 +1,163 @@
+package de.kiliansen.lib.ObservableValue.stats;
+
+import de.kiliansen.lib.ObservableValue.value.ObservableValue;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Checks the incrementally maintained statistics of a {@link WindowedStatistics} against values
+ * recomputed from the samples in the window, for count and time windows, after every added and
+ * evicted sample. Also checks that {@link LogLinearHistogram} quantiles stay within their relative
+ * error of the exact quantiles while samples are added and removed.
+ */
+public final class WindowedStatisticsTest {
+    private static final double[] QUANTILES = {0, 0.5, 0.99, 1};
+    private static final double QUANTILE_ERROR = Math.scalb(1.0, -7);
+
+    private WindowedStatisticsTest() {
+    }
+
+    public static void run() {
+        countWindow();
+        timeWindow();
+        histogram();
+    }
+
+    private static void countWindow() {
+        Random random = new Random(40);
+        ObservableValue<Double> source = new ObservableValue<>(0.0);
+        ArrayDeque<Double> window = new ArrayDeque<>();
+        try (WindowedStatistics statistics = new WindowedStatistics(source, new StatisticsWindow(64), QUANTILES)) {
+            for (int i = 0; i < 20_000; i++) {
+                // Repeated samples are recorded as well when the source is set with forceTrigger
+                double value = random.nextInt(10) == 0 && !window.isEmpty() ? window.peekLast() : 1_000 + random.nextGaussian() * 50;
+                source.set(value, true);
+                window.addLast(value);
+                if (window.size() > 64) window.removeFirst();
+                compare(statistics, window, "sample " + i);
+            }
+        }
+    }
+
+    private static void timeWindow() {
+        Random random = new Random(41);
+        AtomicLong now = new AtomicLong();
+        long length = Duration.ofSeconds(1).toNanos();
+        StatisticsWindow config = new StatisticsWindow(Duration.ofSeconds(1), 500).withClock(now::get);
+        ArrayDeque<long[]> window = new ArrayDeque<>();
+        try (WindowedStatistics statistics = new WindowedStatistics(new ObservableValue<>(0.0), config, QUANTILES)) {
+            for (int i = 0; i < 20_000; i++) {
+                now.addAndGet(random.nextInt(20) == 0 ? random.nextLong(3 * length) : random.nextLong(length / 100));
+                if (random.nextInt(10) == 0) {
+                    statistics.refresh();
+                } else {
+                    double value = random.nextGaussian() * 1e6 - 3e5;
+                    statistics.add(value);
+                    window.addLast(new long[]{Double.doubleToLongBits(value), now.get()});
+                }
+                while (!window.isEmpty() && now.get() - window.peekFirst()[1] > length) window.removeFirst();
+                while (window.size() > 500) window.removeFirst();
+                List<Double> values = new ArrayList<>(window.size());
+                for (long[] sample : window) values.add(Double.longBitsToDouble(sample[0]));
+                compare(statistics, values, "step " + i);
+            }
+        }
+    }
+
+    private static void compare(WindowedStatistics statistics, Collection<Double> window, String where) {
+        int n = window.size();
+        check(statistics.count().get() == n, where + ": count " + statistics.count().get() + ", expected " + n);
+        double sum = 0;
+        for (double value : window) sum += value;
+        double mean = sum / n;
+        double squaredDeviations = 0;
+        for (double value : window) squaredDeviations += (value - mean) * (value - mean);
+        double scale = 0;
+        for (double value : window) scale = Math.max(scale, Math.abs(value));
+
+        check(close(statistics.sum().get(), n == 0 ? 0 : sum, scale * 1e-9 * Math.max(1, n)), where + ": sum " + statistics.sum().get() + ", expected " + sum);
+        if (n == 0) {
+            check(statistics.mean().get().isNaN(), where + ": mean of an empty window is not NaN");
+        } else {
+            check(close(statistics.mean().get(), mean, scale * 1e-9), where + ": mean " + statistics.mean().get() + ", expected " + mean);
+        }
+        if (n < 2) {
+            check(statistics.variance().get().isNaN(), where + ": variance of fewer than two samples is not NaN");
+        } else {
+            double variance = squaredDeviations / (n - 1);
+            check(close(statistics.variance().get(), variance, variance * 1e-6 + scale * scale * 1e-12),
+                    where + ": variance " + statistics.variance().get() + ", expected " + variance);
+        }
+
+        double[] sorted = window.stream().mapToDouble(Double::doubleValue).sorted().toArray();
+        for (int i = 0; i < QUANTILES.length; i++) {
+            double estimate = statistics.quantile(i).get();
+            if (n == 0) {
+                check(Double.isNaN(estimate), where + ": quantile of an empty window is not NaN");
+            } else {
+                double exact = exactQuantile(sorted, QUANTILES[i]);
+                check(close(estimate, exact, Math.abs(exact) * QUANTILE_ERROR), where + ": quantile " + QUANTILES[i] + " " + estimate + ", expected " + exact);
+            }
+        }
+    }
+
+    private static void histogram() {
+        Random random = new Random(42);
+        int precisionBits = 3;
+        LogLinearHistogram histogram = new LogLinearHistogram(precisionBits, QUANTILES);
+        List<Double> samples = new ArrayList<>();
+        for (int i = 0; i < 15_000; i++) {
+            if (samples.isEmpty() || random.nextInt(5) < 3) {
+                double value = switch (random.nextInt(4)) {
+                    case 0 -> 0;
+                    case 1 -> -Math.exp(random.nextDouble() * 40);
+                    default -> Math.exp(random.nextDouble() * 40 - 20);
+                };
+                histogram.add(value);
+                samples.add(value);
+            } else {
+                double value = samples.remove(random.nextInt(samples.size()));
+                histogram.remove(value);
+            }
+            if (samples.size() > 500) {
+                histogram.remove(samples.remove(0));
+            }
+
+            if (samples.isEmpty()) {
+                check(Double.isNaN(histogram.quantile(0)), "quantile of an empty histogram is not NaN");
+                continue;
+            }
+            double[] sorted = samples.stream().mapToDouble(Double::doubleValue).toArray();
+            Arrays.sort(sorted);
+            for (int q = 0; q < QUANTILES.length; q++) {
+                double exact = exactQuantile(sorted, QUANTILES[q]);
+                double estimate = histogram.quantile(q);
+                check(close(estimate, exact, Math.abs(exact) * Math.scalb(1.0, -precisionBits)),
+                        "histogram quantile " + QUANTILES[q] + " " + estimate + ", expected " + exact + " after " + i + " updates");
+            }
+        }
+    }
+
+    /**
+     * The sample of rank {@code ceil(q * n)}, the definition the histogram estimates.
+     */
+    private static double exactQuantile(double[] sorted, double quantile) {
+        int rank = (int) Math.max(1, Math.ceil(quantile * sorted.length));
+        return sorted[rank - 1];
+    }
+
+    private static boolean close(double actual, double expected, double tolerance) {
+        return Math.abs(actual - expected) <= tolerance;
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) throw new AssertionError(message);
+    }
+}
@@ -0,0 +1,118 @@
+package de.kiliansen.lib.ObservableValue.value;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Checks the atomic updates of {@link ObservableValue}: a failed compare-and-set and an update to
+ * an equal value notify nobody, an update function is retried when another thread changes the value
+ * in between, and concurrent updates are neither lost nor notified twice.
+ */
+public final class AtomicUpdateTest {
+    private static final int THREADS = 4;
+    private static final int PER_THREAD = 50_000;
+
+    private AtomicUpdateTest() {
+    }
+
+    public static void run() throws InterruptedException {
+        failedCompareAndSetFiresNothing();
+        equalValueFiresNothing();
+        updateIsRetriedAfterInterference();
+        concurrentUpdatesAreNotLost();
+    }
+
+    private static void failedCompareAndSetFiresNothing() {
+        ObservableValue<String> value = new ObservableValue<>("a");
+        List<String> events = new ArrayList<>();
+        value.onChange((oldValue, newValue) -> events.add(oldValue + "->" + newValue), true);
+
+        check(!value.compareAndSet("b", "c"), "compareAndSet succeeded with a wrong expected value");
+        check(value.get().equals("a") && events.isEmpty(), "a failed compareAndSet changed the value or fired: " + events);
+        check(value.compareAndSet(new String("a"), "c"), "compareAndSet did not compare with equals");
+        check(value.get().equals("c") && events.equals(List.of("a->c")), "a successful compareAndSet fired " + events);
+    }
+
+    private static void equalValueFiresNothing() {
+        ObservableValue<Integer> value = new ObservableValue<>(5);
+        AtomicInteger fired = new AtomicInteger();
+        value.onChange((oldValue, newValue) -> fired.incrementAndGet(), true);
+
+        check(value.compareAndSet(5, 5), "compareAndSet to the current value did not report success");
+        check(value.getAndUpdate(current -> current) == 5, "getAndUpdate did not return the unchanged value");
+        check(value.updateAndGet(current -> current * 1) == 5, "updateAndGet did not return the unchanged value");
+        check(value.accumulateAndGet(0, Integer::sum) == 5, "accumulateAndGet did not return the unchanged value");
+        check(fired.get() == 0, fired.get() + " notifications for updates to an equal value");
+
+        check(value.getAndUpdate(current -> current + 1) == 5, "getAndUpdate did not return the previous value");
+        check(value.updateAndGet(current -> current + 1) == 7, "updateAndGet did not return the new value");
+        check(value.accumulateAndGet(3, Integer::sum) == 10, "accumulateAndGet did not return the new value");
+        check(fired.get() == 3, fired.get() + " notifications for three changes");
+    }
+
+    private static void updateIsRetriedAfterInterference() throws InterruptedException {
+        ObservableValue<Integer> value = new ObservableValue<>(0);
+        List<String> events = new ArrayList<>();
+        value.onChange((oldValue, newValue) -> {
+            synchronized (events) {
+                events.add(oldValue + "->" + newValue);
+            }
+        }, true);
+        AtomicInteger calls = new AtomicInteger();
+        AtomicReference<Thread> interferer = new AtomicReference<>();
+
+        int result = value.updateAndGet(current -> {
+            if (calls.incrementAndGet() == 1) {
+                // Another thread changes the value after it was read, so this attempt must fail
+                Thread thread = Thread.ofPlatform().start(() -> value.set(100));
+                interferer.set(thread);
+                try {
+                    thread.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return current + 1;
+        });
+        check(calls.get() == 2, "the update function ran " + calls.get() + " times instead of 2");
+        check(result == 101 && value.get() == 101, "the retried update was not applied to the newer value: " + value.get());
+        check(events.equals(List.of("0->100", "100->101")), "unexpected notifications " + events);
+        interferer.get().join();
+    }
+
+    private static void concurrentUpdatesAreNotLost() throws InterruptedException {
+        ObservableValue<Integer> value = new ObservableValue<>(0);
+        AtomicInteger fired = new AtomicInteger();
+        AtomicInteger broken = new AtomicInteger();
+        value.onChange((oldValue, newValue) -> {
+            fired.incrementAndGet();
+            if (newValue != oldValue + 1) broken.incrementAndGet();
+        }, true);
+
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            int id = t;
+            threads.add(Thread.ofPlatform().start(() -> {
+                for (int i = 0; i < PER_THREAD; i++) {
+                    switch ((id + i) % 3) {
+                        case 0 -> value.getAndUpdate(current -> current + 1);
+                        case 1 -> value.updateAndGet(current -> current + 1);
+                        default -> value.accumulateAndGet(1, Integer::sum);
+                    }
+                }
+            }));
+        }
+        for (Thread thread : threads) thread.join();
+
+        int expected = THREADS * PER_THREAD;
+        check(value.get() == expected, "lost updates: " + value.get() + " of " + expected);
+        check(fired.get() == expected, fired.get() + " notifications for " + expected + " updates");
+        check(broken.get() == 0, broken.get() + " notifications did not step by one");
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) throw new AssertionError(message);
+    }
+}
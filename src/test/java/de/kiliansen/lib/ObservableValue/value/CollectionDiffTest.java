@@ -0,0 +1,171 @@
+package de.kiliansen.lib.ObservableValue.value;
+
+import de.kiliansen.lib.ObservableValue.list.ObservableListChangeDef;
+import de.kiliansen.lib.ObservableValue.map.MapTypes;
+import de.kiliansen.lib.ObservableValue.map.ObservableMapChangeDef;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checks {@link CollectionDiff} and the per-change memo behind
+ * {@link ObservableValue#onListDiff(java.util.function.Consumer, boolean)}.
+ * <p>
+ * List diffs are applied to the old list and compared with the new one, and their edit count is
+ * compared with the longest common subsequence. Map diffs are applied the same way. The memo is
+ * checked by letting several asynchronous diff listeners replay a long series of changes, each on its
+ * own copy; a diff handed to the wrong change breaks the replay.
+ */
+public final class CollectionDiffTest {
+    private CollectionDiffTest() {
+    }
+
+    public static void run() throws InterruptedException {
+        listDiffs();
+        mapDiffs();
+        sharedDiff();
+        concurrentMemo();
+    }
+
+    private static void listDiffs() {
+        Random random = new Random(29);
+        for (int round = 0; round < 5_000; round++) {
+            List<Integer> a = randomList(random, 40);
+            List<Integer> b = randomList(random, 40);
+            List<ObservableListChangeDef<Integer>> diff = CollectionDiff.diff(a, b);
+            check(apply(a, diff).equals(b), "list diff does not turn " + a + " into " + b);
+
+            int edits = 0;
+            for (ObservableListChangeDef<Integer> change : diff) {
+                edits += change.listChangeType() == ObservableListChangeDef.ListChangeType.UPDATE ? 2 : 1;
+            }
+            check(edits == a.size() + b.size() - 2 * lcs(a, b), "list diff is not minimal for " + a + " -> " + b);
+        }
+
+        List<Integer> a = randomList(random, 100);
+        List<Integer> b = randomList(random, 100);
+        List<ObservableListChangeDef<Integer>> fallback = CollectionDiff.diff(a, b, 1);
+        check(fallback.getFirst().listChangeType() == ObservableListChangeDef.ListChangeType.CLEAR, "exceeding maxEdits must start with CLEAR");
+        check(apply(a, fallback).equals(b), "the CLEAR fallback does not produce the new list");
+        check(CollectionDiff.diff(null, List.of(1)).size() == 1, "null must be treated as empty");
+    }
+
+    private static void mapDiffs() {
+        Random random = new Random(2_900);
+        for (int round = 0; round < 2_000; round++) {
+            Map<Integer, Integer> a = randomMap(random);
+            Map<Integer, Integer> b = randomMap(random);
+            Map<Integer, Integer> applied = new HashMap<>(a);
+            for (ObservableMapChangeDef<MapTypes<Integer, Integer>, Integer, Integer> change : CollectionDiff.diff(a, b)) {
+                check(Objects.equals(applied.get(change.key()), change.oldValue()), "map diff has a wrong old value");
+                switch (change.mapChangeType()) {
+                    case PUT -> applied.put(change.key(), change.newValue());
+                    case REMOVE -> applied.remove(change.key());
+                    default -> check(false, "unexpected " + change.mapChangeType());
+                }
+            }
+            check(applied.equals(b), "map diff does not turn " + a + " into " + b);
+        }
+    }
+
+    /**
+     * All diff listeners of one change must receive the same, once computed script.
+     */
+    private static void sharedDiff() {
+        ObservableValue<List<Integer>> value = new ObservableValue<>(List.of(1, 2, 3));
+        List<Object> first = new ArrayList<>();
+        List<Object> second = new ArrayList<>();
+        value.<Integer>onListDiff(first::add, true);
+        value.<Integer>onListDiff(second::add, true);
+        value.set(List.of(1, 3, 4));
+        value.set(List.of(4));
+        check(first.size() == 2 && second.size() == 2, "every diff listener must be called once per change");
+        check(first.get(0) == second.get(0) && first.get(1) == second.get(1), "diff listeners of one change must share the script");
+        check(first.get(0) != first.get(1), "different changes must not share a script");
+    }
+
+    private static void concurrentMemo() throws InterruptedException {
+        int changes = 50_000;
+        int listeners = 4;
+        Random random = new Random(290);
+        List<Integer> initial = randomList(random, 12);
+        ObservableValue<List<Integer>> value = new ObservableValue<>(initial);
+        List<List<Integer>> replicas = new ArrayList<>();
+        CountDownLatch done = new CountDownLatch(listeners);
+        for (int l = 0; l < listeners; l++) {
+            List<Integer> replica = new ArrayList<>(initial);
+            replicas.add(replica);
+            int[] received = {0};
+            value.<Integer>onListDiff(diff -> {
+                List<Integer> next = apply(replica, diff);
+                replica.clear();
+                replica.addAll(next);
+                if (++received[0] == changes) done.countDown();
+            }, false);
+        }
+
+        List<Integer> last = initial;
+        for (int i = 0; i < changes; i++) {
+            List<Integer> next;
+            do {
+                next = randomList(random, 12);
+            } while (next.equals(last));
+            value.set(next);
+            last = next;
+        }
+        check(done.await(60, TimeUnit.SECONDS), "diff listeners did not receive every change");
+        for (List<Integer> replica : replicas) {
+            check(replica.equals(last), "a diff listener replayed to " + replica + " instead of " + last);
+        }
+    }
+
+    private static List<Integer> apply(List<Integer> list, List<ObservableListChangeDef<Integer>> diff) {
+        List<Integer> result = new ArrayList<>(list);
+        for (ObservableListChangeDef<Integer> change : diff) {
+            int index = change.index();
+            switch (change.listChangeType()) {
+                case ADD -> result.add(index, change.newValue());
+                case REMOVE -> check(Objects.equals(result.remove(index), change.oldValue()), "REMOVE has a wrong old value");
+                case UPDATE -> check(Objects.equals(result.set(index, change.newValue()), change.oldValue()), "UPDATE has a wrong old value");
+                case CLEAR -> result.clear();
+            }
+        }
+        return result;
+    }
+
+    private static int lcs(List<Integer> a, List<Integer> b) {
+        int[][] table = new int[a.size() + 1][b.size() + 1];
+        for (int i = 1; i <= a.size(); i++) {
+            for (int j = 1; j <= b.size(); j++) {
+                table[i][j] = a.get(i - 1).equals(b.get(j - 1))
+                        ? table[i - 1][j - 1] + 1
+                        : Math.max(table[i - 1][j], table[i][j - 1]);
+            }
+        }
+        return table[a.size()][b.size()];
+    }
+
+    private static List<Integer> randomList(Random random, int maxSize) {
+        List<Integer> list = new ArrayList<>();
+        int size = random.nextInt(maxSize + 1);
+        for (int i = 0; i < size; i++) list.add(random.nextInt(6));
+        return list;
+    }
+
+    private static Map<Integer, Integer> randomMap(Random random) {
+        Map<Integer, Integer> map = new HashMap<>();
+        int size = random.nextInt(30);
+        for (int i = 0; i < size; i++) map.put(random.nextInt(40), random.nextInt(4));
+        return map;
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) throw new AssertionError(message);
+    }
+}
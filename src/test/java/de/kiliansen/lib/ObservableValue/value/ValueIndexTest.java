@@ -0,0 +1,95 @@
+package de.kiliansen.lib.ObservableValue.value;
+
+import de.kiliansen.lib.ObservableValue.base.ThreadedListener;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Compares value-targeted listeners, which {@link ObservableValue} keeps in a {@link ValueIndex},
+ * with unindexed listeners that test the same condition themselves. Over a random series of sets,
+ * forced re-sets of the same value and removals, every targeted listener must run exactly as often
+ * as its unindexed twin, for null and non-null targets, with and without {@code triggerOnSameValue},
+ * on the same thread and asynchronously. Also checks that targeted listeners run after the others.
+ */
+public final class ValueIndexTest {
+    private static final String[] DOMAIN = {"a", "b", "c", null};
+
+    private ValueIndexTest() {
+    }
+
+    /**
+     * A targeted listener, its unindexed twin and how often each ran.
+     */
+    private record Pair(ThreadedListener<?, ?> indexed, ThreadedListener<?, ?> unindexed, AtomicInteger indexedRuns, AtomicInteger unindexedRuns,
+                        String description) {
+    }
+
+    public static void run() throws InterruptedException {
+        matchesUnindexedListeners();
+        notifiesTargetedListenersLast();
+    }
+
+    private static void matchesUnindexedListeners() throws InterruptedException {
+        ObservableValue<String> value = new ObservableValue<>("a");
+        List<Pair> pairs = new ArrayList<>();
+        for (String on : DOMAIN) {
+            for (boolean triggerOnSameValue : new boolean[]{false, true}) {
+                for (boolean useSameThread : new boolean[]{true, false}) {
+                    for (int copy = 0; copy < 2; copy++) {
+                        AtomicInteger indexedRuns = new AtomicInteger();
+                        AtomicInteger unindexedRuns = new AtomicInteger();
+                        ThreadedListener<?, ?> indexed = value.onChange(indexedRuns::incrementAndGet, on, useSameThread, triggerOnSameValue);
+                        ThreadedListener<?, ?> unindexed = value.onChange((oldValue, newValue) -> {
+                            if (Objects.equals(on, newValue) && (triggerOnSameValue || !Objects.equals(oldValue, newValue))) {
+                                unindexedRuns.incrementAndGet();
+                            }
+                        }, useSameThread);
+                        pairs.add(new Pair(indexed, unindexed, indexedRuns, unindexedRuns,
+                                "on=" + on + " triggerOnSameValue=" + triggerOnSameValue + " useSameThread=" + useSameThread));
+                    }
+                }
+            }
+        }
+
+        Random random = new Random(36);
+        for (int i = 0; i < 20_000; i++) {
+            String next = DOMAIN[random.nextInt(DOMAIN.length)];
+            value.set(next, random.nextBoolean());
+            if (i % 2_000 == 1_999 && pairs.size() > 8) {
+                // Remove a listener pair; neither may run afterwards
+                Pair removed = pairs.remove(random.nextInt(pairs.size()));
+                value.flush();
+                removed.indexed().close();
+                removed.unindexed().close();
+                int before = removed.indexedRuns().get();
+                value.set(removed.description().startsWith("on=null") ? null : "a", true);
+                value.flush();
+                check(removed.indexedRuns().get() == before, "a removed targeted listener still ran (" + removed.description() + ")");
+            }
+        }
+        value.flush();
+        for (Pair pair : pairs) {
+            check(pair.indexedRuns().get() == pair.unindexedRuns().get(), "targeted listener ran " + pair.indexedRuns().get()
+                    + " times, its unindexed twin " + pair.unindexedRuns().get() + " times (" + pair.description() + ")");
+            check(pair.indexedRuns().get() > 0, "targeted listener never ran (" + pair.description() + ")");
+        }
+    }
+
+    private static void notifiesTargetedListenersLast() {
+        ObservableValue<String> value = new ObservableValue<>("a");
+        List<String> order = new ArrayList<>();
+        value.onChange(() -> order.add("targeted 1"), "b", true, false);
+        value.onChange((oldValue, newValue) -> order.add("regular"), true);
+        value.onChange(() -> order.add("targeted 2"), "b", true, false);
+        value.set("b");
+        check(order.equals(List.of("regular", "targeted 1", "targeted 2")), "unexpected notification order " + order);
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) throw new AssertionError(message);
+    }
+}
@@ -0,0 +1,423 @@
+import de.kiliansen.lib.ObservableValue.base.Executor;
+import de.kiliansen.lib.ObservableValue.base.ThreadedListener;
+import de.kiliansen.lib.ObservableValue.list.ObservableList;
+import de.kiliansen.lib.ObservableValue.list.ObservableListChangeDef;
+import de.kiliansen.lib.ObservableValue.map.ObservableMap;
+import de.kiliansen.lib.ObservableValue.value.ObservableValue;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Concurrency stress and latency harness for listener delivery.
+ * <p>
+ * Every scenario hammers one observable type with several writers while another thread keeps
+ * subscribing and unsubscribing listeners, then checks event-count conservation, per-listener
+ * ordering where it is guaranteed and the consistency of indices and old values. Delivery latency
+ * percentiles are measured at the end and compared against limits. The process exits with status 1
+ * if any check fails, so it can gate a build (see the {@code stress} profile in the pom).
+ * <p>
+ * System properties: {@code stress.scale} multiplies the number of operations (default 1),
+ * {@code stress.maxSameThreadP99Micros} and {@code stress.maxAsyncP99Micros} set the latency limits.
+ */
+public class stress {
+    private static final int WRITERS = 8;
+    private static final int SCALE = Integer.getInteger("stress.scale", 1);
+    private static final long MAX_SAME_THREAD_P99_MICROS = Long.getLong("stress.maxSameThreadP99Micros", 1_000);
+    private static final long MAX_ASYNC_P99_MICROS = Long.getLong("stress.maxAsyncP99Micros", 20_000);
+
+    private static final List<String> failures = new ArrayList<>();
+
+    public static void main(String[] args) throws Exception {
+        run("value transitions", stress::valueTransitions);
+        run("map per-key ordering", stress::mapOrdering);
+        run("map shared-key chains", stress::mapSharedKeyChains);
+        run("list indices", stress::listIndices);
+        run("executor resize", stress::executorResize);
+        run("delivery latency", stress::deliveryLatency);
+
+        if (failures.isEmpty()) {
+            System.out.println("All stress checks passed");
+            System.exit(0);
+        }
+        System.out.println(failures.size() + " stress check(s) failed:");
+        failures.forEach(failure -> System.out.println("  " + failure));
+        System.exit(1);
+    }
+
+    private interface Scenario {
+        void run() throws Exception;
+    }
+
+    private static void run(String name, Scenario scenario) {
+        long start = System.nanoTime();
+        int failed = failures.size();
+        try {
+            scenario.run();
+        } catch (Throwable t) {
+            failures.add(name + ": " + t);
+        }
+        System.out.printf("%-22s %s in %d ms%n", name, failures.size() == failed ? "ok" : "FAILED",
+                (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) failures.add(message);
+    }
+
+    /**
+     * Concurrent increments must produce one transition per increment, each from n to n + 1, so no
+     * value is skipped or reported twice.
+     */
+    private static void valueTransitions() throws Exception {
+        int perWriter = 50_000 * SCALE;
+        int total = WRITERS * perWriter;
+        ObservableValue<Integer> value = new ObservableValue<>(0);
+        AtomicIntegerArray seen = new AtomicIntegerArray(total + 1);
+        AtomicInteger badTransitions = new AtomicInteger();
+        AtomicLong asyncEvents = new AtomicLong();
+
+        value.onChange((oldValue, newValue) -> {
+            if (newValue != oldValue + 1) badTransitions.incrementAndGet();
+            seen.incrementAndGet(newValue);
+        }, true);
+        value.onChangeDef(change -> asyncEvents.incrementAndGet(), false);
+
+        Churn churn = new Churn(() -> value.onChange((oldValue, newValue) -> {
+        }, ThreadLocalRandom.current().nextBoolean()));
+        try {
+            runWriters(writer -> {
+                for (int i = 0; i < perWriter; i++) {
+                    value.updateAndGet(current -> current + 1);
+                }
+            });
+        } finally {
+            churn.close();
+        }
+        value.flush();
+
+        int duplicates = 0, missing = 0;
+        for (int i = 1; i <= total; i++) {
+            if (seen.get(i) == 0) missing++;
+            if (seen.get(i) > 1) duplicates++;
+        }
+        check(value.get() == total, "value: final value " + value.get() + ", expected " + total);
+        check(badTransitions.get() == 0, "value: " + badTransitions.get() + " transitions did not go from n to n + 1");
+        check(duplicates == 0 && missing == 0, "value: " + duplicates + " duplicate and " + missing + " missing new values");
+        check(asyncEvents.get() == total, "value: async listener got " + asyncEvents.get() + " of " + total + " events");
+    }
+
+    /**
+     * Every writer owns its keys and writes increasing values. Same-thread and partitioned
+     * listeners must see every change and each key's values in order, the same-thread listener
+     * also with matching old values.
+     */
+    private static void mapOrdering() throws Exception {
+        int keysPerWriter = 64;
+        int perWriter = 50_000 * SCALE;
+        ObservableMap<Integer, Long> map = new ObservableMap<>();
+        map.enablePartitionedDispatch(4);
+        int keys = WRITERS * keysPerWriter;
+        AtomicLongArray lastInline = new AtomicLongArray(keys);
+        AtomicLongArray lastPartitioned = new AtomicLongArray(keys);
+        AtomicInteger inlineErrors = new AtomicInteger();
+        AtomicInteger partitionedErrors = new AtomicInteger();
+        AtomicLong inlineEvents = new AtomicLong();
+        AtomicLong partitionedEvents = new AtomicLong();
+
+        map.onChange((key, oldValue, newValue, type) -> {
+            inlineEvents.incrementAndGet();
+            if (!Objects.equals(oldValue == null ? 0L : oldValue, lastInline.get(key)) || newValue <= lastInline.get(key)) {
+                inlineErrors.incrementAndGet();
+            }
+            lastInline.set(key, newValue);
+        }, true);
+        map.onChange((key, oldValue, newValue, type) -> {
+            partitionedEvents.incrementAndGet();
+            if (newValue <= lastPartitioned.get(key)) partitionedErrors.incrementAndGet();
+            lastPartitioned.set(key, newValue);
+        }, false);
+
+        Churn churn = new Churn(() -> map.onPut((key, value) -> {
+        }, ThreadLocalRandom.current().nextBoolean()));
+        try {
+            runWriters(writer -> {
+                for (int i = 1; i <= perWriter; i++) {
+                    map.put(writer * keysPerWriter + i % keysPerWriter, (long) i);
+                }
+            });
+        } finally {
+            churn.close();
+        }
+        map.flush();
+        map.disablePartitionedDispatch();
+
+        long total = (long) WRITERS * perWriter;
+        check(inlineEvents.get() == total, "map: same-thread listener got " + inlineEvents.get() + " of " + total + " events");
+        check(partitionedEvents.get() == total, "map: partitioned listener got " + partitionedEvents.get() + " of " + total + " events");
+        check(inlineErrors.get() == 0, "map: " + inlineErrors.get() + " same-thread events out of order or with a wrong old value");
+        check(partitionedErrors.get() == 0, "map: " + partitionedErrors.get() + " partitioned events out of order");
+    }
+
+    /**
+     * All writers put unique values into the same few keys. The partitioned listener must see each
+     * key's changes as an unbroken chain, every old value being the previous new value, with
+     * increasing versions, and end on the map's final value.
+     */
+    private static void mapSharedKeyChains() throws Exception {
+        int keys = 3;
+        int perWriter = 100_000 * SCALE;
+        ObservableMap<Integer, Long> map = new ObservableMap<>();
+        map.enablePartitionedDispatch(4);
+        AtomicLong nextValue = new AtomicLong();
+        AtomicLongArray lastValue = new AtomicLongArray(keys);
+        AtomicLongArray lastVersion = new AtomicLongArray(keys);
+        AtomicInteger brokenChains = new AtomicInteger();
+        AtomicInteger versionErrors = new AtomicInteger();
+        AtomicLong events = new AtomicLong();
+        for (int key = 0; key < keys; key++) {
+            lastValue.set(key, -1);
+        }
+
+        map.onChange(change -> {
+            events.incrementAndGet();
+            int key = change.key();
+            long oldValue = change.oldValue() == null ? -1 : change.oldValue();
+            if (oldValue != lastValue.get(key)) brokenChains.incrementAndGet();
+            if (change.version() <= lastVersion.get(key)) versionErrors.incrementAndGet();
+            lastValue.set(key, change.newValue());
+            lastVersion.set(key, change.version());
+        }, false);
+
+        Churn churn = new Churn(() -> map.onPut((key, value) -> {
+        }, ThreadLocalRandom.current().nextBoolean()));
+        try {
+            runWriters(writer -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < perWriter; i++) {
+                    map.put(random.nextInt(keys), nextValue.getAndIncrement());
+                }
+            });
+        } finally {
+            churn.close();
+        }
+        map.flush();
+        map.disablePartitionedDispatch();
+
+        long total = (long) WRITERS * perWriter;
+        check(events.get() == total, "map: shared-key listener got " + events.get() + " of " + total + " events");
+        check(brokenChains.get() == 0, "map: " + brokenChains.get() + " shared-key events whose old value was not the previous new value");
+        check(versionErrors.get() == 0, "map: " + versionErrors.get() + " shared-key events with a non-increasing version");
+        for (int key = 0; key < keys; key++) {
+            Long value = map.get(key);
+            check(value != null && value == lastValue.get(key), "map: shared key " + key + " ends on " + value + ", listener on " + lastValue.get(key));
+        }
+    }
+
+    /**
+     * Adders and removers race on one list. Replaying the same-thread events in order onto a copy
+     * must validate every index and old value and end with the same contents.
+     */
+    private static void listIndices() throws Exception {
+        int perWriter = 5_000 * SCALE;
+        ObservableList<Integer> list = new ObservableList<>();
+        List<Integer> replica = new ArrayList<>();
+        AtomicInteger mismatches = new AtomicInteger();
+        AtomicInteger nextElement = new AtomicInteger();
+
+        list.onChange((index, oldValue, newValue, type) -> {
+            synchronized (replica) {
+                if (type == ObservableListChangeDef.ListChangeType.ADD) {
+                    if (index < 0 || index > replica.size()) mismatches.incrementAndGet();
+                    else replica.add(index, newValue);
+                } else if (type == ObservableListChangeDef.ListChangeType.REMOVE) {
+                    if (index < 0 || index >= replica.size() || !Objects.equals(replica.get(index), oldValue)) mismatches.incrementAndGet();
+                    else replica.remove(index);
+                }
+            }
+        }, true);
+
+        Churn churn = new Churn(() -> list.onAdd((value, index) -> {
+        }, ThreadLocalRandom.current().nextBoolean()));
+        try {
+            runWriters(writer -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < perWriter; i++) {
+                    if (writer % 2 == 0 || list.isEmpty()) {
+                        list.add(nextElement.getAndIncrement());
+                    } else {
+                        try {
+                            list.remove(list.get(random.nextInt(list.size())));
+                        } catch (IndexOutOfBoundsException e) {
+                            // Another remover emptied the list in between
+                        }
+                    }
+                }
+            });
+        } finally {
+            churn.close();
+        }
+
+        synchronized (replica) {
+            check(mismatches.get() == 0, "list: " + mismatches.get() + " events with an index or old value not matching the replayed list");
+            check(replica.equals(new ArrayList<>(list)), "list: replayed events do not reproduce the list contents");
+        }
+    }
+
+    /**
+     * Resizing the shared executor while asynchronous deliveries are in flight must not lose any.
+     */
+    private static void executorResize() throws Exception {
+        int perWriter = 25_000 * SCALE;
+        int originalThreads = Executor.getNumThreads();
+        ObservableValue<Integer> value = new ObservableValue<>(0);
+        AtomicLong delivered = new AtomicLong();
+        value.onChangeDef(change -> delivered.incrementAndGet(), false);
+
+        AtomicBoolean writing = new AtomicBoolean(true);
+        Thread resizer = new Thread(() -> {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            try {
+                while (writing.get()) {
+                    Executor.resize(1 + random.nextInt(8), Duration.ofSeconds(5));
+                    Thread.sleep(1);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "stress-resizer");
+        resizer.start();
+        try {
+            runWriters(writer -> {
+                for (int i = 0; i < perWriter; i++) {
+                    value.updateAndGet(current -> current + 1);
+                }
+            });
+        } finally {
+            writing.set(false);
+            resizer.join();
+        }
+        boolean flushed = value.flush(Duration.ofSeconds(30));
+        Executor.resize(originalThreads, Duration.ofSeconds(5));
+
+        long total = (long) WRITERS * perWriter;
+        check(flushed, "resize: deliveries did not finish within 30 s");
+        check(delivered.get() == total, "resize: " + delivered.get() + " of " + total + " async events delivered");
+    }
+
+    /**
+     * Measures the time from a change to its delivery for same-thread and asynchronous listeners
+     * and fails if the 99th percentile exceeds its limit.
+     */
+    private static void deliveryLatency() throws Exception {
+        int samples = 200_000 * SCALE;
+        ObservableValue<Long> value = new ObservableValue<>(0L);
+        long[] sameThread = new long[samples];
+        long[] async = new long[samples];
+        AtomicInteger sameThreadCount = new AtomicInteger();
+        AtomicInteger asyncCount = new AtomicInteger();
+
+        value.onChange((oldValue, sentAt) -> sameThread[sameThreadCount.getAndIncrement()] = System.nanoTime() - sentAt, true);
+        value.onChange((oldValue, sentAt) -> async[asyncCount.getAndIncrement()] = System.nanoTime() - sentAt, false);
+
+        // Warm up, then measure with a pause every 256 changes so the executor queue stays short
+        for (int i = 0; i < samples; i++) {
+            if (i == samples / 4) {
+                value.flush();
+                sameThreadCount.set(0);
+                asyncCount.set(0);
+            }
+            value.set(System.nanoTime());
+            if ((i & 255) == 0) value.flush();
+        }
+        value.flush();
+
+        long[] inline = Arrays.copyOf(sameThread, sameThreadCount.get());
+        long[] queued = Arrays.copyOf(async, asyncCount.get());
+        Arrays.sort(inline);
+        Arrays.sort(queued);
+        System.out.printf("  same-thread p50 %s p99 %s p99.9 %s%n", micros(inline, 0.5), micros(inline, 0.99), micros(inline, 0.999));
+        System.out.printf("  async       p50 %s p99 %s p99.9 %s%n", micros(queued, 0.5), micros(queued, 0.99), micros(queued, 0.999));
+
+        check(percentile(inline, 0.99) <= MAX_SAME_THREAD_P99_MICROS * 1_000,
+                "latency: same-thread p99 " + micros(inline, 0.99) + " exceeds " + MAX_SAME_THREAD_P99_MICROS + " us");
+        check(percentile(queued, 0.99) <= MAX_ASYNC_P99_MICROS * 1_000,
+                "latency: async p99 " + micros(queued, 0.99) + " exceeds " + MAX_ASYNC_P99_MICROS + " us");
+    }
+
+    private static long percentile(long[] sorted, double quantile) {
+        return sorted.length == 0 ? 0 : sorted[(int) Math.min(sorted.length - 1, Math.ceil(quantile * sorted.length) - 1)];
+    }
+
+    private static String micros(long[] sorted, double quantile) {
+        return String.format("%.1f us", percentile(sorted, quantile) / 1_000.0);
+    }
+
+    private interface Writer {
+        void run(int writer) throws Exception;
+    }
+
+    /**
+     * Runs {@link #WRITERS} writers at once and rethrows the first failure.
+     */
+    private static void runWriters(Writer writer) throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        ConcurrentLinkedQueue<Throwable> errors = new ConcurrentLinkedQueue<>();
+        Thread[] threads = new Thread[WRITERS];
+        for (int i = 0; i < WRITERS; i++) {
+            int id = i;
+            threads[i] = new Thread(() -> {
+                try {
+                    start.await();
+                    writer.run(id);
+                } catch (Throwable t) {
+                    errors.add(t);
+                }
+            }, "stress-writer-" + i);
+            threads[i].start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        if (!errors.isEmpty()) throw new AssertionError("Writer failed", errors.peek());
+    }
+
+    /**
+     * Keeps subscribing and unsubscribing throw-away listeners until closed.
+     */
+    private static final class Churn {
+        private final AtomicBoolean running = new AtomicBoolean(true);
+        private final Thread thread;
+
+        Churn(java.util.function.Supplier<ThreadedListener<?, ?>> subscribe) {
+            thread = new Thread(() -> {
+                List<ThreadedListener<?, ?>> active = new ArrayList<>();
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                while (running.get()) {
+                    if (active.size() < 8 && random.nextBoolean()) active.add(subscribe.get());
+                    else if (!active.isEmpty()) active.remove(random.nextInt(active.size())).close();
+                    Thread.onSpinWait();
+                }
+                active.forEach(ThreadedListener::close);
+            }, "stress-churn");
+            thread.start();
+        }
+
+        void close() throws InterruptedException {
+            running.set(false);
+            thread.join();
+        }
+    }
+}